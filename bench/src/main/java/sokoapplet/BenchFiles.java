@@ -0,0 +1,64 @@
+package sokoapplet;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+
+/**
+ * Localiza los archivos del proyecto (packs de niveles y temas) que usan los benchmarks.
+ * <br/>
+ * <a href="../../bench/src/main/java/sokoapplet/BenchFiles.java">[Pulse aquí para ver el código fuente]</a>
+ * <hr/>
+ * Se buscan en el directorio dado por la propiedad "sokoapplet.home", o si no se indica en el
+ * directorio actual y en su padre, de forma que los benchmarks pueden lanzarse tanto desde la raíz
+ * del proyecto como desde el directorio bench.
+ *
+ * @author Fernando Carmona Varo
+ */
+class BenchFiles {
+
+    /**
+     * Devuelve un archivo del proyecto
+     *
+     * @param name Ruta relativa a la raíz del proyecto
+     * @return El archivo
+     * @throws FileNotFoundException si no se encuentra
+     */
+    static File get(String name) throws FileNotFoundException {
+        String home = System.getProperty("sokoapplet.home");
+        String dirs[] = home != null ? new String[] { home } : new String[] { ".", ".." };
+        for (String dir : dirs) {
+            File f = new File(dir, name);
+            if (f.exists()) {
+                return f;
+            }
+        }
+        throw new FileNotFoundException(name + " (use -Dsokoapplet.home=<directorio del proyecto>)");
+    }
+
+    /**
+     * Carga un pack de niveles de texto del proyecto
+     *
+     * @param name Nombre del archivo del pack
+     * @return Los niveles
+     */
+    static LevelSource pack(String name) throws Exception {
+        return Solver.openPack(get(name));
+    }
+
+    /**
+     * Devuelve el texto del nivel con más casillas de un pack
+     *
+     * @param levels Niveles del pack
+     * @return Texto del nivel, en el formato de Board(String)
+     */
+    static String largest(LevelSource levels) {
+        Board best = null;
+        for (int i = 0; i < levels.size(); i++) {
+            Board b = levels.getBoard(i);
+            if (best == null || b.XLim * b.YLim > best.XLim * best.YLim) {
+                best = b;
+            }
+        }
+        return best.toString();
+    }
+}
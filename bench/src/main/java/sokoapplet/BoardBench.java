@@ -0,0 +1,90 @@
+package sokoapplet;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks de las operaciones básicas del tablero: construcción desde texto, movimiento y
+ * deshacer, comprobación de nivel completado, y cota inferior de empujes (incremental frente a
+ * calculada desde cero).
+ * <br/>
+ * <a href="../../bench/src/main/java/sokoapplet/BoardBench.java">[Pulse aquí para ver el código fuente]</a>
+ * <hr/>
+ * Se mide sobre el primer nivel de levels.txt y sobre el nivel con más casillas del mismo pack.
+ *
+ * @author Fernando Carmona Varo
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBench {
+
+    /**  Nivel a usar: "first" o "largest" */
+    @Param({ "first", "largest" })
+    public String level;
+
+    private String text;
+    private Board board;
+    /**  Desplazamiento de un movimiento posible desde la posición inicial */
+    private int dx, dy;
+
+    @Setup
+    public void setup() throws Exception {
+        LevelSource levels = BenchFiles.pack("levels.txt");
+        text = level.equals("first") ? levels.getBoard(0).toString() : BenchFiles.largest(levels);
+        board = new Board(text);
+        for (int dir = 0; dir < 4; dir++) {
+            if (board.movePlayer(Board.DX[dir], Board.DY[dir]) || board.moveNumber() > 0) {
+                board.undoMove();
+                dx = Board.DX[dir];
+                dy = Board.DY[dir];
+                return;
+            }
+        }
+        throw new IllegalStateException("El jugador no puede moverse en el nivel " + level);
+    }
+
+    @Benchmark
+    public Board construct() {
+        return new Board(text);
+    }
+
+    @Benchmark
+    public int moveUndo() {
+        board.movePlayer(dx, dy);
+        board.undoMove();
+        return board.player;
+    }
+
+    @Benchmark
+    public boolean hasWon() {
+        return board.hasWon();
+    }
+
+    @Benchmark
+    public int moveUndoLowerBound() {
+        board.movePlayer(dx, dy);
+        int bound = board.pushLowerBound();
+        board.undoMove();
+        return bound + board.pushLowerBound();
+    }
+
+    @Benchmark
+    public int lowerBoundFromScratch() {
+        return new LowerBound(board).get();
+    }
+}
@@ -0,0 +1,73 @@
+package sokoapplet;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark del dibujado completo de un tablero en una imagen fuera de pantalla.
+ * <br/>
+ * <a href="../../bench/src/main/java/sokoapplet/PaintBench.java">[Pulse aquí para ver el código fuente]</a>
+ * <hr/>
+ * Cada iteración invalida el BoardRenderer, recompone todo el tablero (capa estática incluida) y lo
+ * vuelca a una imagen del tamaño del applet, que es lo que ocurre al empezar un nivel o cambiar de tema.
+ * Se ejecuta sin pantalla (java.awt.headless), con el tema Ferk del proyecto.
+ *
+ * @author Fernando Carmona Varo
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PaintBench {
+
+    /**  Nivel a usar: "first" o "largest" */
+    @Param({ "first", "largest" })
+    public String level;
+
+    private BoardRenderer renderer;
+    private BufferedImage screen;
+    private Graphics g;
+
+    @Setup
+    public void setup() throws Exception {
+        LevelSource levels = BenchFiles.pack("levels.txt");
+        Board board = level.equals("first") ? levels.getBoard(0) : new Board(BenchFiles.largest(levels));
+        Theme theme = Theme.get(BenchFiles.get("themes/Ferk/").toURI().toURL(), SokoApplet.tSize);
+        if (!theme.waitLoaded(10000)) {
+            throw new IllegalStateException("No se ha podido cargar el tema");
+        }
+        renderer = new BoardRenderer(theme);
+        renderer.setBoard(board);
+        screen = new BufferedImage(500, 500, BufferedImage.TYPE_INT_RGB);
+        g = screen.getGraphics();
+    }
+
+    @TearDown
+    public void tearDown() {
+        g.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage paint() {
+        renderer.invalidate();
+        renderer.flush();
+        renderer.draw(g, 0, 0);
+        return screen;
+    }
+}
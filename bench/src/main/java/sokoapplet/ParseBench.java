@@ -0,0 +1,72 @@
+package sokoapplet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks de la lectura de los packs de niveles incluidos en el proyecto.
+ * <br/>
+ * <a href="../../bench/src/main/java/sokoapplet/ParseBench.java">[Pulse aquí para ver el código fuente]</a>
+ * <hr/>
+ * El archivo se lee a memoria antes de medir, de forma que sólo se mide el indexado del pack
+ * (LevelPack.load()) y, por otro lado, el indexado más la construcción de todos sus tableros.
+ *
+ * @author Fernando Carmona Varo
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBench {
+
+    /**  Pack de niveles a leer */
+    @Param({ "levels.txt", "levels-easy.txt", "levels-medium.txt", "levels-hard.txt" })
+    public String pack;
+
+    private byte data[];
+
+    @Setup
+    public void setup() throws Exception {
+        File f = BenchFiles.get(pack);
+        data = new byte[(int) f.length()];
+        InputStream in = new FileInputStream(f);
+        try {
+            for (int n = 0, r; n < data.length && (r = in.read(data, n, data.length - n)) > 0; n += r) {
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    @Benchmark
+    public LevelPack load() throws Exception {
+        return LevelPack.load(new ByteArrayInputStream(data));
+    }
+
+    @Benchmark
+    public int loadBoards() throws Exception {
+        LevelPack levels = LevelPack.load(new ByteArrayInputStream(data));
+        int cells = 0;
+        for (int i = 0; i < levels.size(); i++) {
+            cells += levels.getBoard(i).XLim;
+        }
+        return cells;
+    }
+}
@@ -0,0 +1,78 @@
+package sokoapplet;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks de saltos a movimientos al azar de una partida larga: con Timeline (puntos de control)
+ * frente a deshacer y rehacer los movimientos uno a uno.
+ * <br/>
+ * <a href="../../bench/src/main/java/sokoapplet/TimelineBench.java">[Pulse aquí para ver el código fuente]</a>
+ * <hr/>
+ * La partida es un paseo al azar por el primer nivel de levels.txt con el número de movimientos dado.
+ *
+ * @author Fernando Carmona Varo
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimelineBench {
+
+    /**  Movimientos de la partida */
+    @Param({ "5000" })
+    public int moves;
+
+    private Board board;
+    private Timeline timeline;
+    /**  Movimientos a los que se salta, en orden */
+    private int targets[];
+    private int next;
+
+    @Setup
+    public void setup() throws Exception {
+        board = BenchFiles.pack("levels.txt").getBoard(0);
+        timeline = new Timeline(board, Timeline.INTERVAL);
+        Random rnd = new Random(1);
+        while (board.moveNumber() < moves) {
+            int dir = rnd.nextInt(4);
+            board.movePlayer(Board.DX[dir], Board.DY[dir]);
+        }
+        targets = new int[1024];
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = rnd.nextInt(moves + 1);
+        }
+    }
+
+    @Benchmark
+    public int jump() {
+        timeline.jump(targets[next++ & 1023]);
+        return board.player;
+    }
+
+    @Benchmark
+    public int undoRedo() {
+        int target = targets[next++ & 1023];
+        while (board.moveNumber() > target) {
+            board.undoMove();
+        }
+        while (board.moveNumber() < target && board.redoMove()) {
+            // rehace hasta llegar
+        }
+        return board.player;
+    }
+}
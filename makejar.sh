@@ -1,4 +1,4 @@
 #!/bin/bash 
 
-jar cf sokoapplet.jar bin/*.class
+jar cf sokoapplet.jar -C bin sokoapplet
 
@@ -0,0 +1,7 @@
+#!/bin/bash 
+
+# Compila el juego y los benchmarks, y los ejecuta guardando los resultados en jmh-result.json.
+# Los argumentos se pasan a JMH, por ejemplo: ./runbench.sh BoardBench -f 2
+
+mvn -B -q package -DskipTests && \
+java -jar bench/target/benchmarks.jar -rf json -rff jmh-result.json "$@"
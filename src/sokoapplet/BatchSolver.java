@@ -0,0 +1,298 @@
+package sokoapplet;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Herramienta de línea de comandos para validar y resolver en paralelo todos los niveles de uno o
+ * varios packs.
+ * <br/>
+ * <a href="../../src/sokoapplet/BatchSolver.java">[Pulse aquí para ver el código fuente]</a>
+ * <hr/>
+ * Cada nivel se comprueba con Board.checkWellFormed() y, si es correcto, se resuelve con Solver
+ * con un límite de tiempo y de memoria por nivel. Los niveles se reparten entre tantos hilos como
+ * procesadores haya (o los indicados), y nunca hay más de dos niveles por hilo pendientes a la vez,
+ * de forma que la memoria usada no depende del tamaño del pack.
+ *
+ * <h3>Archivo de resultados</h3>
+ * Se escribe una linea por nivel, separando los campos por tabuladores: pack, número de nivel,
+ * título, resultado, movimientos, empujes, tiempo en milisegundos y solución. El resultado es el
+ * estado del Solver, INVALID seguido del problema si el nivel no está bien formado, o ERROR seguido
+ * del fallo si no se ha podido procesar (por ejemplo por quedarse sin memoria), sin detener el resto.<br/>
+ * Cada linea se escribe en cuanto termina su nivel, y si el archivo ya existe se añaden al final
+ * sólo los niveles que no estén ya en él, por lo que un proceso interrumpido puede continuarse
+ * volviendo a ejecutar el mismo comando. La última linea, si quedó cortada por la interrupción, se
+ * descarta antes de continuar. No se puede continuar con -validate un archivo de niveles resueltos ni
+ * al revés, para no mezclar en él resultados de los dos modos.
+ *
+ * <h3>Uso</h3>
+ * <code>java sokoapplet.BatchSolver [-threads N] [-time segundos] [-mem MB] [-validate] -out resultados.txt pack...</code>
+ * <br/>Con -validate sólo se comprueba que los niveles estén bien formados, sin resolverlos.
+ *
+ * @author Fernando Carmona Varo
+ */
+public class BatchSolver {
+
+    /**  Estado de los niveles que no están bien formados */
+    static final String INVALID = "INVALID";
+    /**  Estado de los niveles que no se han podido procesar */
+    static final String ERROR = "ERROR";
+    /**  Estado de los niveles bien formados con -validate */
+    static final String VALID = "VALID";
+
+    /**
+     * Estimación de los bytes que ocupa cada nodo de la búsqueda, para convertir el límite de memoria
+     * en un número máximo de nodos: el estado (cajas y zona del jugador), los datos del nodo, la
+     * entrada de la tabla de transposición y la de la cola de abiertos.
+     *
+     * @param board Tablero a resolver
+     * @return Bytes por nodo
+     */
+    static long bytesPerNode(Board board) {
+        return 4L * (board.boxes.length + 1) + 12 + 24 + 8;
+    }
+
+    /**
+     * Valida y resuelve un nivel
+     *
+     * @param pack Nombre del pack
+     * @param levels Niveles del pack
+     * @param level Número de nivel, desde 0
+     * @param timeLimit Tiempo máximo en milisegundos
+     * @param memLimit Memoria máxima en bytes
+     * @param solve false para sólo validar el nivel
+     * @return Linea del archivo de resultados
+     */
+    static String process(String pack, LevelSource levels, int level, long timeLimit, long memLimit, boolean solve) {
+        Board board = levels.getBoard(level);
+        String title = levels.getTitle(level);
+        StringBuilder sb = new StringBuilder();
+        sb.append(pack).append('\t').append(level + 1).append('\t')
+          .append(title == null ? "" : title.replace('\t', ' ')).append('\t');
+        String problem = board.checkWellFormed();
+        if (problem != null) {
+            return sb.append(INVALID).append(' ').append(problem).append("\t\t\t\t").toString();
+        }
+        if (!solve) {
+            return sb.append(VALID).append("\t\t\t\t").toString();
+        }
+        Solver solver = new Solver(board);
+        solver.setTimeLimit(timeLimit);
+        solver.setMaxNodes((int) Math.min(Integer.MAX_VALUE, memLimit / bytesPerNode(board)));
+        Solver.Result res = solver.solve();
+        sb.append(res.status).append('\t');
+        if (res.isSolved()) {
+            sb.append(res.moves).append('\t').append(res.pushes);
+        } else {
+            sb.append('\t');
+        }
+        sb.append('\t').append(res.millis).append('\t');
+        if (res.isSolved()) {
+            sb.append(res.solution);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Linea del archivo de resultados de un nivel que no se ha podido procesar
+     *
+     * @param pack Nombre del pack
+     * @param levels Niveles del pack
+     * @param level Número de nivel, desde 0
+     * @param e Fallo producido
+     * @return Linea del archivo de resultados
+     */
+    static String error(String pack, LevelSource levels, int level, Throwable e) {
+        String title;
+        try {
+            title = levels.getTitle(level);
+        } catch (RuntimeException ex) {
+            title = null;
+        }
+        return pack + '\t' + (level + 1) + '\t' + (title == null ? "" : title.replace('\t', ' ')) + '\t'
+                + ERROR + ' ' + e.toString().replaceAll("[\t\r\n]+", " ") + "\t\t\t\t";
+    }
+
+    /**
+     * Descarta la última linea del archivo de resultados si quedó cortada (sin fin de linea), para
+     * que las lineas que se añadan después empiecen en una linea nueva
+     *
+     * @param file Archivo de resultados
+     */
+    static void truncateIncomplete(File file) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            long end = raf.length();
+            while (end > 0) {
+                raf.seek(end - 1);
+                if (raf.read() == '\n') {
+                    break;
+                }
+                end--;
+            }
+            if (end < raf.length()) {
+                raf.setLength(end);
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Lee los niveles ya procesados de un archivo de resultados
+     *
+     * @param file Archivo de resultados
+     * @param solve false si se está validando (-validate)
+     * @return Conjunto de claves "pack\tnivel" ya procesadas
+     * @throws IOException si falla la lectura o el archivo tiene resultados del otro modo
+     */
+    static Set<String> readDone(File file, boolean solve) throws IOException {
+        Set<String> done = new HashSet<String>();
+        if (!file.exists()) {
+            return done;
+        }
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            for (String line; (line = in.readLine()) != null; ) {
+                String fields[] = line.split("\t", 3);
+                // una linea cortada por una interrupción no tiene todos los campos
+                String all[] = line.split("\t", -1);
+                if (fields.length == 3 && all.length == 8) {
+                    // INVALID y ERROR pueden venir de cualquiera de los dos modos
+                    String status = all[3];
+                    if (!status.startsWith(INVALID) && !status.startsWith(ERROR) && status.equals(VALID) == solve) {
+                        throw new IOException(file + " tiene resultados " + (solve ? "de -validate" : "de niveles resueltos")
+                                + ", use otro archivo de resultados");
+                    }
+                    done.add(fields[0] + "\t" + fields[1]);
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return done;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        long time = 60000, mem = 256L << 20;
+        boolean solve = true;
+        String out = null;
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("-"); i++) {
+            if (args[i].equals("-validate")) {
+                solve = false;
+            } else if (i + 1 < args.length && args[i].equals("-threads")) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (i + 1 < args.length && args[i].equals("-time")) {
+                time = Long.parseLong(args[++i]) * 1000;
+            } else if (i + 1 < args.length && args[i].equals("-mem")) {
+                mem = Long.parseLong(args[++i]) << 20;
+            } else if (i + 1 < args.length && args[i].equals("-out")) {
+                out = args[++i];
+            } else {
+                i = args.length;
+            }
+        }
+        if (out == null || i >= args.length) {
+            System.err.println("Uso: java sokoapplet.BatchSolver [-threads N] [-time segundos] [-mem MB] [-validate] -out resultados.txt pack...");
+            System.exit(1);
+        }
+        File outFile = new File(out);
+        truncateIncomplete(outFile);
+        Set<String> done;
+        try {
+            done = readDone(outFile, solve);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(outFile, true), "UTF-8"));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CompletionService<String> results = new ExecutorCompletionService<String>(pool);
+        long start = System.currentTimeMillis();
+        int processed = 0, solved = 0, skipped = 0, pending = 0;
+        try {
+            for (; i < args.length; i++) {
+                final String pack = args[i];
+                final LevelSource levels = Solver.openPack(new File(pack));
+                for (int l = 0; l < levels.size(); l++) {
+                    if (done.contains(pack + "\t" + (l + 1))) {
+                        skipped++;
+                        continue;
+                    }
+                    // limita los niveles pendientes para no cargar todo el pack en la cola
+                    if (pending >= 2 * threads) {
+                        if (write(writer, results.take().get())) {
+                            solved++;
+                        }
+                        pending--;
+                        processed++;
+                    }
+                    final int level = l;
+                    final long timeLimit = time, memLimit = mem;
+                    final boolean solveLevel = solve;
+                    results.submit(new Callable<String>() {
+                        public String call() {
+                            try {
+                                return process(pack, levels, level, timeLimit, memLimit, solveLevel);
+                            } catch (RuntimeException e) {
+                                return error(pack, levels, level, e);
+                            } catch (OutOfMemoryError e) {
+                                return error(pack, levels, level, e);
+                            } catch (StackOverflowError e) {
+                                return error(pack, levels, level, e);
+                            }
+                        }
+                    });
+                    pending++;
+                }
+            }
+            for (; pending > 0; pending--, processed++) {
+                if (write(writer, results.take().get())) {
+                    solved++;
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IOException("Error procesando un nivel", e.getCause());
+        } finally {
+            pool.shutdownNow();
+            writer.close();
+        }
+        long millis = Math.max(1, System.currentTimeMillis() - start);
+        System.out.println(processed + " niveles procesados (" + skipped + " ya estaban en " + out + "), "
+                + solved + " correctos, en " + millis + "ms con " + threads + " hilos ("
+                + (processed * 1000L / millis) + " niveles/s)");
+    }
+
+    /**
+     * Escribe una linea de resultados
+     *
+     * @return true si el nivel se ha resuelto o validado correctamente
+     */
+    private static boolean write(PrintWriter writer, String line) {
+        writer.println(line);
+        writer.flush();
+        String status = line.split("\t", 5)[3];
+        return status.equals("SOLVED") || status.equals(VALID);
+    }
+}
@@ -0,0 +1,355 @@
+package sokoapplet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Pack de niveles precompilado en formato binario.
+ * <br/>
+ * <a href="../../src/sokoapplet/BinaryLevelPack.java">[Pulse aquí para ver el código fuente]</a>
+ * <hr/>
+ * Los packs en formato texto tienen que volver a leerse e interpretarse cada vez que se cargan. Este
+ * formato guarda los niveles ya interpretados, de forma que el archivo puede proyectarse en memoria
+ * (FileChannel.map) y los tableros se construyen directamente a partir de sus bytes. Al abrirlo sólo
+ * se comprueba la tabla de niveles; cada nivel tiene su propio checksum, que se comprueba la primera
+ * vez que se lee, por lo que abrir un pack grande no obliga a recorrerlo entero.
+ *
+ * <h3>Formato del archivo</h3>
+ * Todos los enteros se guardan en big-endian.
+ * <ul>
+ * <li>Cabecera (16 bytes): la marca "SOKP", la versión (short), un short reservado, el número de
+ *     niveles (int) y el CRC32 de la tabla de niveles (int).</li>
+ * <li>Tabla de niveles: para cada nivel, su posición dentro del archivo (int) y el CRC32 de sus
+ *     bytes (int), que llegan hasta el nivel siguiente o el final del archivo.</li>
+ * <li>Niveles: ancho y alto (short), título y comentario (short con la longitud, -1 si no tiene, y
+ *     los bytes en UTF-8) y las casillas fila a fila, dos por byte (ver Board.cellCode()).</li>
+ * </ul>
+ * Para convertir un pack de texto: <code>java sokoapplet.BinaryLevelPack levels.txt levels.sokp</code>
+ *
+ * @author Fernando Carmona Varo
+ */
+public class BinaryLevelPack implements LevelSource {
+
+    /**  Marca de los archivos de packs binarios, "SOKP" */
+    static final int MAGIC = 0x534F4B50;
+    /**  Versión del formato */
+    static final short VERSION = 2;
+    /**  Tamaño de la cabecera */
+    static final int HEADER = 16;
+    /**  Tamaño de cada entrada de la tabla de niveles */
+    static final int ENTRY = 8;
+
+    /**  Contenido del pack */
+    private final ByteBuffer buf;
+    /**  Número de niveles */
+    private final int count;
+    /**
+     * Niveles cuyo checksum ya se ha comprobado. Si varios hilos leen a la vez el mismo nivel puede
+     * comprobarse más de una vez, pero el resultado es el mismo.
+     */
+    private final boolean checked[];
+
+    /**
+     * Construye el pack sobre el contenido dado, comprobando la cabecera y el checksum de la tabla
+     * de niveles
+     *
+     * @param buf Contenido completo del archivo
+     * @throws IOException si el contenido no es un pack binario válido
+     */
+    BinaryLevelPack(ByteBuffer buf) throws IOException {
+        this.buf = buf;
+        if (buf.limit() < HEADER || buf.getInt(0) != MAGIC) {
+            throw new IOException("No es un pack de niveles binario");
+        }
+        if (buf.getShort(4) != VERSION) {
+            throw new IOException("Versión de pack binario no soportada: " + buf.getShort(4));
+        }
+        count = buf.getInt(8);
+        if (count < 0 || (long) HEADER + (long) ENTRY * count > buf.limit()
+                || crc(HEADER, HEADER + ENTRY * count) != buf.getInt(12)) {
+            throw new IOException("El checksum del pack binario no es correcto");
+        }
+        for (int i = 0; i < count; i++) {
+            int pos = buf.getInt(HEADER + ENTRY * i);
+            if (pos < HEADER + ENTRY * count || pos > levelEnd(i)) {
+                throw new IOException("La tabla de niveles del pack binario no es correcta");
+            }
+        }
+        checked = new boolean[count];
+    }
+
+    /**
+     * Calcula el CRC32 de una parte del contenido
+     *
+     * @param from Posición inicial
+     * @param to Posición final (excluida)
+     * @return CRC32 de los bytes entre las dos posiciones
+     */
+    private int crc(int from, int to) {
+        CRC32 crc = new CRC32();
+        ByteBuffer aux = buf.duplicate();
+        aux.limit(to).position(from);
+        crc.update(aux);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Abre un pack binario proyectando el archivo en memoria
+     *
+     * @param file Archivo del pack
+     * @return El pack abierto
+     * @throws IOException si falla la lectura o el archivo no es válido
+     */
+    public static BinaryLevelPack open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel ch = raf.getChannel();
+            return new BinaryLevelPack(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+        } finally {
+            raf.close(); // la proyección sigue siendo válida tras cerrar el archivo
+        }
+    }
+
+    /**
+     * Carga un pack binario leyéndolo de un stream (por ejemplo desde una URL), que no se cierra.
+     *
+     * @param in Stream con el pack
+     * @return El pack cargado
+     * @throws IOException si falla la lectura o el contenido no es válido
+     */
+    public static BinaryLevelPack load(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte aux[] = new byte[8192];
+        for (int n; (n = in.read(aux)) >= 0; ) {
+            out.write(aux, 0, n);
+        }
+        return new BinaryLevelPack(ByteBuffer.wrap(out.toByteArray()));
+    }
+
+    /**
+     * Escribe en formato binario todos los niveles de un pack
+     *
+     * @param levels Niveles a escribir
+     * @param out Stream de salida, que no se cierra
+     * @throws IOException si falla la escritura
+     */
+    public static void write(LevelSource levels, OutputStream out) throws IOException {
+        int count = levels.size();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(body);
+        int offsets[] = new int[count];
+        int base = HEADER + ENTRY * count;
+        for (int i = 0; i < count; i++) {
+            offsets[i] = base + data.size();
+            Board board = levels.getBoard(i);
+            data.writeShort(board.XLim);
+            data.writeShort(board.YLim);
+            writeString(data, levels.getTitle(i));
+            writeString(data, levels.getComment(i));
+            int b = 0, n = 0;
+            for (int y = 0; y < board.YLim; y++) {
+                for (int x = 0; x < board.XLim; x++, n++) {
+                    if ((n & 1) == 0) {
+                        b = board.cellCode(x, y) << 4;
+                    } else {
+                        data.writeByte(b | board.cellCode(x, y));
+                    }
+                }
+            }
+            if ((n & 1) != 0) {
+                data.writeByte(b);
+            }
+        }
+        data.flush();
+        byte bodyBytes[] = body.toByteArray();
+        ByteArrayOutputStream table = new ByteArrayOutputStream(ENTRY * count);
+        DataOutputStream tableData = new DataOutputStream(table);
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < count; i++) {
+            int from = offsets[i] - base, to = i + 1 < count ? offsets[i + 1] - base : bodyBytes.length;
+            crc.reset();
+            crc.update(bodyBytes, from, to - from);
+            tableData.writeInt(offsets[i]);
+            tableData.writeInt((int) crc.getValue());
+        }
+        crc.reset();
+        crc.update(table.toByteArray());
+
+        DataOutputStream dout = new DataOutputStream(out);
+        dout.writeInt(MAGIC);
+        dout.writeShort(VERSION);
+        dout.writeShort(0);
+        dout.writeInt(count);
+        dout.writeInt((int) crc.getValue());
+        table.writeTo(dout);
+        dout.write(bodyBytes);
+        dout.flush();
+    }
+
+    private static void writeString(DataOutputStream data, String s) throws IOException {
+        if (s == null) {
+            data.writeShort(-1);
+            return;
+        }
+        byte b[] = s.getBytes("UTF-8");
+        if (b.length > Short.MAX_VALUE) {
+            throw new IOException("Texto demasiado largo para el pack binario");
+        }
+        data.writeShort(b.length);
+        data.write(b);
+    }
+
+    /**
+     * Lee un texto del pack
+     *
+     * @param pos Posición del texto
+     * @return El texto leído, o null si no tiene
+     */
+    private String readString(int pos) {
+        int len = buf.getShort(pos);
+        if (len < 0) {
+            return null;
+        }
+        byte b[] = new byte[len];
+        ByteBuffer aux = buf.duplicate();
+        aux.position(pos + 2);
+        aux.get(b);
+        try {
+            return new String(b, "UTF-8");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Salta un texto del pack
+     *
+     * @param pos Posición del texto
+     * @return Posición siguiente al texto
+     */
+    private int skipString(int pos) {
+        return pos + 2 + Math.max(0, buf.getShort(pos));
+    }
+
+    /**
+     * Devuelve la posición en el archivo donde acaba el nivel dado
+     */
+    private int levelEnd(int level) {
+        return level + 1 < count ? buf.getInt(HEADER + ENTRY * (level + 1)) : buf.limit();
+    }
+
+    /**
+     * Devuelve la posición en el archivo del nivel dado, comprobando su checksum si es la primera vez
+     * que se lee
+     *
+     * @throws IllegalStateException si el checksum del nivel no es correcto
+     */
+    private int levelOffset(int level) {
+        if (level < 0 || level >= count) {
+            throw new IndexOutOfBoundsException("Nivel " + level + " de " + count);
+        }
+        int pos = buf.getInt(HEADER + ENTRY * level);
+        if (!checked[level]) {
+            if (crc(pos, levelEnd(level)) != buf.getInt(HEADER + ENTRY * level + 4)) {
+                throw new IllegalStateException("El checksum del nivel " + (level + 1) + " del pack binario no es correcto");
+            }
+            checked[level] = true;
+        }
+        return pos;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public String getTitle(int level) {
+        return readString(levelOffset(level) + 4);
+    }
+
+    public String getComment(int level) {
+        return readString(skipString(levelOffset(level) + 4));
+    }
+
+    public Board getBoard(int level) {
+        int pos = levelOffset(level);
+        int width = buf.getShort(pos), height = buf.getShort(pos + 2);
+        pos = skipString(skipString(pos + 4));
+        return new Board(width, height, buf, pos);
+    }
+
+    /**
+     * Escribe todos los niveles del pack en formato texto, con su título y comentario
+     *
+     * @param levels Niveles a escribir
+     * @param out Stream de salida, que no se cierra
+     * @throws IOException si falla la escritura
+     */
+    public static void writeText(LevelSource levels, OutputStream out) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < levels.size(); i++) {
+            String title = levels.getTitle(i), comment = levels.getComment(i);
+            sb.setLength(0);
+            if (title != null) {
+                sb.append('\'').append(title).append('\'');
+                if (comment != null) {
+                    sb.append(" ; ").append(comment);
+                }
+                sb.append('\n');
+            } else if (comment != null) {
+                sb.append("; ").append(comment).append('\n');
+            }
+            sb.append('\n').append(levels.getBoard(i)).append('\n');
+            out.write(sb.toString().getBytes(LevelPack.CHARSET));
+        }
+        out.flush();
+    }
+
+    /**
+     * Convierte un pack de niveles entre los formatos texto y binario, según la extensión del
+     * archivo de salida (".sokp" para binario).
+     *
+     * @param args Archivo de entrada y archivo de salida
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Uso: java sokoapplet.BinaryLevelPack <entrada> <salida>");
+            System.err.println("  si la salida acaba en .sokp se escribe en binario, si no en texto");
+            System.exit(1);
+        }
+        File in = new File(args[0]);
+        LevelSource levels;
+        if (in.getName().endsWith(".sokp")) {
+            levels = open(in);
+        } else {
+            InputStream is = new BufferedInputStream(new FileInputStream(in));
+            try {
+                levels = LevelPack.load(is);
+            } finally {
+                is.close();
+            }
+        }
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(args[1]));
+        try {
+            if (args[1].endsWith(".sokp")) {
+                write(levels, out);
+            } else {
+                writeText(levels, out);
+            }
+        } finally {
+            out.close();
+        }
+        System.out.println(levels.size() + " niveles escritos en " + args[1]);
+    }
+}
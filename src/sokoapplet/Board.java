@@ -0,0 +1,1313 @@
+package sokoapplet;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+
+/**
+ * Clase que contiene la lógica del juego.
+ * <br/>
+ * <a href="../../src/sokoapplet/Board.java">[Pulse aquí apra ver el código fuente]</a>
+ * <hr/>
+ * La clase Board es empleada para almacenar el estado del tablero del juego así como para implementar
+ * los movimientos del jugador sobre el tablero y los efectos de las colisiones.
+ *
+ * <h3>Construcción del tablero</h3>
+ * La clase Board.java genera el tablero directamente en el constructor de su clase. Recibe como parámetro un String que contiene codificado en caracteres los objetos del tablero (cada carácter representa a un objeto) separando las filas del tablero por saltos de linea.<br/>
+ * El tablero se guarda en arrays planos del tamaño exacto del nivel (XLim*YLim, indexados por y*XLim+x): una capa estática con muros y metas, y otra dinámica con las cajas, mientras que la posición del jugador en el tablero se almacena en una variable aparte para poder localizarlo con facilidad.<br/>
+ * Los desplazamientos de cada dirección dentro de esos arrays se precalculan al construir el tablero.
+ * 
+ * <h3>Movimiento del jugador y historial de movimientos</h3>
+ * La clase Board tiene un método para mover al jugador que es el que se encarga de comprobar si este movimiento es posible (hay espacio libre, o un objeto que puede ser empujado) y realizarlo, moviendo al jugador, y en su caso empujando el objeto.<br/>
+ * Cada movimiento es añadido a una lista que almacena un historial de los mvimientos del jugador, de forma que con otro método es posible deshacer movimientos del jugador.<br/>
+ * Los cambios del tablero (movimientos, empujes, movimientos deshechos y nivel completado) se notifican a los BoardListener registrados, como por ejemplo BoardTracer para obtener trazas de depuración.<br/>
+ * El tablero mantiene además un hash Zobrist de las cajas que se actualiza con cada empuje, con el que se obtiene en tiempo constante un hash de 64 bits del estado (ver hash() y stateHash()) para usarlo con StateMap.<br/>
+ * El historial (MoveHistory) guarda cada movimiento en un byte con su dirección y si empujó una caja, y permite también rehacer movimientos y exportar o cargar partidas en formato LURD.
+ * 
+ * <h3>Copias del tablero</h3>
+ * La capa estática no cambia una vez construido el tablero, por lo que puede compartirse: con snapshot() se guarda sólo el estado dinámico (cajas y jugador) para volver a él con restore(), y con fork() se obtiene un tablero independiente que comparte la capa estática con el original y que sólo crea su índice de cajas por casilla al usarlo. Así varios hilos pueden explorar a la vez distintas ramas de un mismo nivel, cada uno con su copia.
+ * 
+ * <h3>Bloqueos</h3>
+ * Al construir el tablero se marcan las casillas muertas, desde las que una caja ya no puede llegar a ninguna meta, y tras cada empuje se comprueba si la caja empujada ha provocado un bloqueo (casilla muerta, bloque de 2x2 o caja congelada fuera de una meta), que se consulta con isDeadlocked().
+ * 
+ * <h3>Fin del nivel</h3>
+ * Cuando todas las cajas han sido colocadas en un almacén, el método “hasWon()” de la clase retornará true.<br/>
+ * El tablero lleva la cuenta de las cajas colocadas en metas según se mueven, de forma que esta comprobación no depende del tamaño del nivel.
+ * 
+ * @author Fernando Carmona Varo
+ */
+public class Board { 
+
+	/* Caracteres que definen los objetos del mapa */
+	/** jugador */
+    public static final char PLAYER      = '@'; 
+    /** muro, todo el mapa debe estar rodeado de muros */
+    public static final char WALL        = '#'; 
+    /** espacio vacío */
+    public static final char EMPTY       = ' '; 
+    /**  Caja, objeto que el jugador puede empujar */
+    public static final char BOX         = '$'; 
+    /**  Meta vacía, sobre la que hay que mover las cajas para ganar */
+    public static final char GOAL_EMPTY  = '.'; 
+    /**  Meta sobre la que ya hay situada una caja */
+    public static final char GOAL_BOX    = '*'; 
+    /**  Meta sobre la que está situado el jugador */
+    public static final char GOAL_PLAYER = '+'; 
+    /* Propiedades del mapa  */
+    /**  Límite máximo de longitud X del tablero */
+    public int XLim; 
+    /**  Límite máximo de longitud Y del tablero */
+    public int YLim; 
+    /* Marcas de la capa estática del tablero */
+    /**  la casilla es un muro */
+    static final byte L_WALL = 1;
+    /**  la casilla es una meta */
+    static final byte L_GOAL = 2;
+    /**  desde la casilla ninguna caja puede llegar a una meta */
+    static final byte L_DEAD = 4;
+    /* Marcas de los códigos de casilla de los packs binarios */
+    static final int C_WALL = L_WALL, C_GOAL = L_GOAL, C_BOX = 4, C_PLAYER = 8;
+    /* Desplazamientos en X e Y de cada dirección, en orden LURD (izquierda, arriba, derecha, abajo) */
+    static final int DX[] = { -1, 0, 1, 0 };
+    static final int DY[] = { 0, -1, 0, 1 };
+    /**  Capa estática (muros y metas) del tablero, indexada por y*XLim+x */
+    final byte layout[];
+    /**  Número de caja (empezando en 1) que ocupa cada casilla, o 0 si no hay ninguna. En las copias
+     *  (ver fork()) es null hasta que se usa, y se crea a partir de boxes con boxAt() */
+    private int boxAt[];
+    /**  Casilla que ocupa cada una de las cajas */
+    int boxes[];
+    /**  Desplazamiento en el array de casillas de cada dirección, precalculado para el ancho del tablero */
+    final int offset[];
+    /**  Casilla en la que se encuentra el jugador */
+    int player;
+    /**  Número de jugadores encontrados al construir el tablero (debería ser 1) */
+    private int players;
+    /**  Número de cajas que están colocadas sobre una meta */
+    int onGoals;
+    /**  Hash Zobrist de las posiciones de las cajas */
+    long boxHash;
+    /**  Hash de la capa estática, calculado al construir el tablero */
+    private long layoutHash;
+    /**  Menor casilla de la zona alcanzable por el jugador, o -1 si hay que recalcularla */
+    private int region = -1;
+    /**  Arrays auxiliares para calcular la zona del jugador, creados sólo si se usan */
+    private int regionStamp[], regionQueue[];
+    private int regionMark;
+    /**  Número de movimientos del historial con el que se detectó un bloqueo, o -1 si no lo hay */
+    private int deadlockAt = -1;
+    /**  Estado de cada caja en la comprobación de cajas congeladas en curso (freezeMark más CHECKING, FROZEN
+     *  o MOVABLE), y profundidad a la que empezó a comprobarse. Se crean sólo si se usan */
+    private int freezeStamp[], freezeDepth[];
+    private int freezeMark;
+    /**  Pila de las cajas cuya comprobación está en curso o depende de otra en curso */
+    private int freezeStack[];
+    private int freezeTop;
+    /**  Si alguna de las cajas congeladas encontradas no está en una meta */
+    private boolean frozenOffGoal;
+    /**  Posición del jugador */
+    public int pl_x,  pl_y;  
+    /**  historial de movimientos del jugador */
+    MoveHistory moveHistory= new MoveHistory(); 
+    /**  escuchadores de los cambios del tablero, null si no hay ninguno */
+    private BoardListener listeners[];
+    /**  Cota inferior de los empujes que faltan, creada en la primera consulta */
+    private LowerBound lowerBound;
+
+    /**
+     * Construye el tablero inicial de juego a partir del texto dado      
+     * 
+     * @param text El string determinará la estructura del mapa, donde cada fila de items correspondera 
+     * con una linea del string (la fila acaba al llegar a un '\n'). Los objetos del mapa se corresponden 
+     * con las constantes indicadas en la clase.  
+     */
+    public Board(String text) {
+        // Primera pasada: dimensiones y número de cajas
+        int nBoxes = 0, x = 0;
+        XLim = YLim = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char aux = text.charAt(i);
+            if (aux == '\n') {
+                YLim++;
+                x = 0;
+                continue;
+            }
+            if (aux == '\r') {
+                continue;
+            }
+            if (aux == BOX || aux == GOAL_BOX) {
+                nBoxes++;
+            }
+            x++;
+            if (XLim < x) {
+                XLim = x;
+            }
+        }
+        if (x > 0) {
+            YLim++; // la última fila no acaba en salto de línea
+        }
+        layout = new byte[XLim * YLim];
+        boxAt = new int[XLim * YLim];
+        boxes = new int[nBoxes];
+        offset = new int[] { -1, -XLim, 1, XLim };
+        // Segunda pasada: rellena las capas del tablero
+        nBoxes = 0;
+        x = 0;
+        for (int y = 0, i = 0; i < text.length(); i++) {
+            char aux = text.charAt(i);
+            if (aux == '\n') {
+                y++;
+                x = 0; //pasa a la siguiente linea
+                continue;
+            }
+            if (aux == '\r') {
+                continue;
+            }
+            int cell = y * XLim + x;
+            switch (aux) {
+                case WALL:
+                    layout[cell] = L_WALL;
+                    break;
+                case GOAL_EMPTY:
+                    layout[cell] = L_GOAL;
+                    break;
+                case GOAL_BOX:
+                case BOX:
+                    if (aux == GOAL_BOX) {
+                        layout[cell] = L_GOAL;
+                        onGoals++;
+                    }
+                    boxes[nBoxes++] = cell;
+                    boxAt[cell] = nBoxes;
+                    boxHash ^= boxKey(cell);
+                    break;
+                case GOAL_PLAYER:
+                case PLAYER:
+                    if (aux == GOAL_PLAYER) {
+                        layout[cell] = L_GOAL;
+                    }
+                    player = cell;
+                    pl_x = x;
+                    pl_y = y;
+                    players++;
+                    break;
+                default: // cualquier otro caracter se considera suelo
+                    break;
+            }
+            x++;
+        }
+        analyse();
+    }
+
+    /**
+     * Construye el tablero a partir de los códigos de casilla empaquetados de un pack binario
+     * (ver BinaryLevelPack): cada casilla ocupa medio byte, empezando por el nibble alto, con las
+     * marcas C_WALL, C_GOAL, C_BOX y C_PLAYER.
+     * 
+     * @param width Ancho del tablero
+     * @param height Alto del tablero
+     * @param cells Buffer con las casillas, fila a fila
+     * @param pos Posición en el buffer de la primera casilla
+     */
+    Board(int width, int height, ByteBuffer cells, int pos) {
+        XLim = width;
+        YLim = height;
+        int n = width * height, nBoxes = 0;
+        for (int i = 0; i < n; i++) {
+            if ((code(cells, pos, i) & C_BOX) != 0) {
+                nBoxes++;
+            }
+        }
+        layout = new byte[n];
+        boxAt = new int[n];
+        boxes = new int[nBoxes];
+        offset = new int[] { -1, -XLim, 1, XLim };
+        nBoxes = 0;
+        for (int i = 0; i < n; i++) {
+            int c = code(cells, pos, i);
+            layout[i] = (byte) (c & (C_WALL | C_GOAL));
+            if ((c & C_BOX) != 0) {
+                boxes[nBoxes++] = i;
+                boxAt[i] = nBoxes;
+                boxHash ^= boxKey(i);
+                if ((c & C_GOAL) != 0) {
+                    onGoals++;
+                }
+            }
+            if ((c & C_PLAYER) != 0) {
+                setPlayer(i);
+                players++;
+            }
+        }
+        analyse();
+    }
+
+    /**
+     * Análisis del nivel que se hace una sola vez al construir el tablero: marca las casillas
+     * muertas, desde las que ninguna caja puede llegar a una meta, y comprueba si el estado
+     * inicial ya está bloqueado.<br/>
+     * Para encontrar las casillas vivas se "tira" de una caja hacia atrás desde todas las metas
+     * a la vez: la caja puede pasar de una casilla a la vecina si ésta y la siguiente (donde
+     * quedaría el jugador) no son muros.
+     */
+    private void analyse() {
+        boolean live[] = new boolean[layout.length];
+        int queue[] = new int[layout.length];
+        int head = 0, tail = 0;
+        for (int i = 0; i < layout.length; i++) {
+            if (isGoal(i)) {
+                live[i] = true;
+                queue[tail++] = i;
+            }
+        }
+        while (head < tail) {
+            int cell = queue[head++];
+            for (int dir = 0; dir < 4; dir++) {
+                int prev = neighbour(cell, dir);
+                if (prev < 0 || live[prev] || layout[prev] == L_WALL) {
+                    continue;
+                }
+                int pl = neighbour(prev, dir);
+                if (pl >= 0 && layout[pl] != L_WALL) {
+                    live[prev] = true;
+                    queue[tail++] = prev;
+                }
+            }
+        }
+        for (int i = 0; i < layout.length; i++) {
+            if (!live[i] && layout[i] != L_WALL) {
+                layout[i] |= L_DEAD;
+            }
+        }
+        layoutHash = XLim;
+        for (int i = 0; i < layout.length; i++) {
+            layoutHash = mix(layoutHash * 31 + layout[i]);
+        }
+        for (int i = 0; i < boxes.length && deadlockAt < 0; i++) {
+            if (isDeadlock(boxes[i])) {
+                deadlockAt = 0;
+            }
+        }
+    }
+
+    /**
+     * Lee el código de una casilla empaquetada en medio byte
+     */
+    private static int code(ByteBuffer cells, int pos, int i) {
+        int b = cells.get(pos + (i >> 1));
+        return (i & 1) == 0 ? (b >> 4) & 0xf : b & 0xf;
+    }
+
+    /**
+     * Devuelve el código de una casilla tal y como se guarda en los packs binarios
+     * 
+     * @param x Ordenada X del tablero
+     * @param y Coordenada Y del tablero
+     * @return Combinación de las marcas C_WALL, C_GOAL, C_BOX y C_PLAYER
+     */
+    int cellCode(int x, int y) {
+        int cell = y * XLim + x;
+        int c = layout[cell] & (C_WALL | C_GOAL);
+        if (boxAt()[cell] != 0) {
+            c |= C_BOX;
+        }
+        if (cell == player) {
+            c |= C_PLAYER;
+        }
+        return c;
+    }
+
+    /**
+     * Constructor vacío
+     * Construye un mapa simple por defecto, añadido por simple conveniencia
+     */
+    public Board() {
+        this("############\n" +
+              "# @     ..#\n" +
+              "#    $$ ..#\n" +
+              "##### $####\n" +
+              "    # $   #\n" +
+              "    #     #\n" +              
+              "    #######\n");
+    }
+
+    /**
+     * Devuelve el caracter del objeto ubicado en las coordenadas dadas del tablero
+     * 
+     * @param x Ordenada X del tablero
+     * @param y Coordenada Y del tablero
+     * @return Caracter que identifica al objeto
+     */
+    public char get(int x, int y) {
+        if (x < 0 || y < 0 || x >= XLim || y >= YLim) {
+            return EMPTY;
+        }
+        int cell = y * XLim + x;
+        if (layout[cell] == L_WALL) {
+            return WALL;
+        }
+        boolean goal = isGoal(cell);
+        if (boxAt()[cell] != 0) {
+            return goal ? GOAL_BOX : BOX;
+        }
+        if (cell == player) {
+            return goal ? GOAL_PLAYER : PLAYER;
+        }
+        return goal ? GOAL_EMPTY : EMPTY;
+    }
+
+    /**
+     * Comprueba si la casilla es un objetivo.
+     * 
+     * @param cell Casilla que se desea comprobar
+     * @return Devuelve true si la casilla dada es una meta, false en otro caso
+     */
+    boolean isGoal(int cell) {
+        return (layout[cell] & L_GOAL) != 0;
+    }
+
+    /**
+     * Comprueba si la casilla está vacía.
+     * 
+     * @param cell Casilla que se desea comprobar
+     * @return Devuelve true si en la casilla dada no hay muro ni caja, false en otro caso
+     */
+    boolean isEmpty(int cell) {
+        return layout[cell] != L_WALL && boxAt()[cell] == 0;
+    }
+
+    /**
+     * Comprueba si el objeto de la casilla dada puede ser empujado por el jugador.
+     * 
+     * @param cell Casilla que se desea comprobar
+     * @return Devuelve true si en la casilla hay un objeto empujable, false en otro caso
+     */
+    boolean isPushable(int cell) {
+        return boxAt()[cell] != 0;
+    }
+
+    /**
+     * Comprueba si se ha ganado el juego.
+     * 
+     * @return Devuelve true si no quedan cajas que no se hayan colocado ya en un objetivo
+     */
+    public boolean hasWon() {
+        return onGoals == boxes.length;
+    }
+
+    /**
+     * Devuelve el número de cajas colocadas ya sobre una meta
+     * 
+     * @return cajas en metas
+     */
+    public int boxesOnGoals() {
+        return onGoals;
+    }
+
+    /**
+     * Devuelve el número de cajas que aún no están sobre una meta
+     * 
+     * @return cajas por colocar
+     */
+    public int boxesRemaining() {
+        return boxes.length - onGoals;
+    }
+
+    /**
+     * Devuelve la clave Zobrist de una caja en la casilla dada. Las claves se generan mezclando
+     * el número de casilla, por lo que no dependen del tablero ni de la ejecución.
+     * 
+     * @param cell Casilla de la caja
+     * @return Clave de 64 bits
+     */
+    static long boxKey(int cell) {
+        return mix(2L * cell + 1);
+    }
+
+    /**
+     * Devuelve la clave Zobrist del jugador en la casilla dada
+     * 
+     * @param cell Casilla (o menor casilla de la zona) del jugador
+     * @return Clave de 64 bits
+     */
+    static long playerKey(int cell) {
+        return mix(2L * cell + 2);
+    }
+
+    /**
+     * Mezcla los bits de un valor (función de finalización de SplitMix64)
+     */
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Devuelve el hash de la posición exacta: cajas y casilla del jugador. Coste O(1).
+     * 
+     * @return Hash de 64 bits
+     */
+    public long hash() {
+        return boxHash ^ playerKey(player);
+    }
+
+    /**
+     * Devuelve el hash del estado del tablero: las cajas y la zona a la que puede llegar el jugador 
+     * sin empujar, de forma que dos posiciones que sólo se diferencian en dónde está el jugador dentro
+     * de la misma zona tienen el mismo hash. La zona sólo cambia al moverse una caja, por lo que sólo se
+     * recalcula (en tiempo proporcional al tamaño del nivel) tras un empuje; el resto de veces el coste es O(1).
+     * 
+     * @return Hash de 64 bits
+     */
+    public long stateHash() {
+        if (region < 0) {
+            if (regionStamp == null) {
+                regionStamp = new int[layout.length];
+                regionQueue = new int[layout.length];
+            }
+            region = reachable(regionStamp, ++regionMark, regionQueue);
+        }
+        return boxHash ^ playerKey(region);
+    }
+
+    /**
+     * Devuelve un hash de la capa estática del nivel (muros, metas y ancho), para distinguir estados de
+     * niveles distintos. Se calcula una sola vez al construir el tablero y lo comparten sus copias.
+     * 
+     * @return Hash de 64 bits
+     */
+    public long layoutHash() {
+        return layoutHash;
+    }
+
+    /**
+     * Devuelve una cota inferior del número de empujes que faltan para resolver el tablero: el coste
+     * de la mejor asignación de cajas a metas según la distancia en empujes de cada caja a cada meta
+     * (ver LowerBound). La primera consulta calcula las distancias del nivel; las siguientes sólo
+     * reasignan las cajas que se han movido desde la anterior.
+     * 
+     * @return Mínimo número de empujes, o LowerBound.INF si alguna caja no puede llegar a una meta
+     */
+    public int pushLowerBound() {
+        if (lowerBound == null) {
+            lowerBound = new LowerBound(this);
+        }
+        return lowerBound.get();
+    }
+
+    /**
+     * Comprueba si el nivel está bien formado: tiene un único jugador, al menos una caja, tantas metas
+     * como cajas, y la zona por la que puede moverse el jugador está cerrada por muros.
+     * 
+     * @return null si el nivel es correcto, o la descripción del problema encontrado
+     */
+    public String checkWellFormed() {
+        if (players != 1) {
+            return players == 0 ? "no hay jugador" : "hay " + players + " jugadores";
+        }
+        int goals = 0;
+        for (int i = 0; i < layout.length; i++) {
+            if (isGoal(i)) {
+                goals++;
+            }
+        }
+        if (boxes.length == 0) {
+            return "no hay cajas";
+        }
+        if (goals != boxes.length) {
+            return boxes.length + " cajas y " + goals + " metas";
+        }
+        // zona del jugador sin tener en cuenta las cajas
+        boolean seen[] = new boolean[layout.length];
+        int queue[] = new int[layout.length];
+        int head = 0, tail = 0;
+        seen[player] = true;
+        queue[tail++] = player;
+        while (head < tail) {
+            int cell = queue[head++];
+            for (int dir = 0; dir < 4; dir++) {
+                int next = neighbour(cell, dir);
+                if (next < 0) {
+                    return "el nivel no está cerrado por muros";
+                }
+                if (!seen[next] && layout[next] != L_WALL) {
+                    seen[next] = true;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Comprueba si el tablero ha quedado bloqueado, es decir, si algún empuje ha dejado una caja 
+     * en una posición desde la que ya no se puede completar el nivel. Se detectan las cajas en
+     * casillas muertas, los bloques de 2x2 y las cajas congeladas fuera de una meta.
+     * 
+     * @return true si se ha detectado un bloqueo
+     */
+    public boolean isDeadlocked() {
+        return deadlockAt >= 0;
+    }
+
+    /**
+     * Comprueba si la casilla dada es una casilla muerta, desde la que una caja no puede llegar a ninguna meta
+     * 
+     * @param x Ordenada X del tablero
+     * @param y Coordenada Y del tablero
+     * @return true si es una casilla muerta
+     */
+    public boolean isDeadSquare(int x, int y) {
+        return inside(x, y) && (layout[y * XLim + x] & L_DEAD) != 0;
+    }
+
+    /**
+     * Devuelve las casillas muertas del nivel
+     * 
+     * @return Conjunto con las casillas muertas, indexadas por y*XLim+x
+     */
+    public BitSet deadSquares() {
+        BitSet set = new BitSet(layout.length);
+        for (int i = 0; i < layout.length; i++) {
+            if ((layout[i] & L_DEAD) != 0) {
+                set.set(i);
+            }
+        }
+        return set;
+    }
+
+    /**
+     * Comprueba si la caja de la casilla dada provoca un bloqueo: está en una casilla muerta, forma
+     * un bloque de 2x2 con muros y cajas sin estar todas en metas, o está congelada fuera de una meta.
+     * Sólo se examinan las casillas cercanas a la caja, por lo que es adecuado hacerlo tras cada empuje.
+     * 
+     * @param cell Casilla de la caja
+     * @return true si hay bloqueo
+     */
+    boolean isDeadlock(int cell) {
+        if ((layout[cell] & L_DEAD) != 0) {
+            return true;
+        }
+        // bloques de 2x2 que contienen la casilla
+        for (int dir = 0; dir < 4; dir++) {
+            int a = neighbour(cell, dir);
+            int b = neighbour(cell, (dir + 1) & 3);
+            int c = a < 0 ? -1 : neighbour(a, (dir + 1) & 3);
+            if (a >= 0 && b >= 0 && c >= 0 && blocks(a) && blocks(b) && blocks(c)
+                    && !(isGoalOrNotBox(cell) && isGoalOrNotBox(a) && isGoalOrNotBox(b) && isGoalOrNotBox(c))) {
+                return true;
+            }
+        }
+        if (freezeStamp == null) {
+            freezeStamp = new int[layout.length];
+            freezeDepth = new int[layout.length];
+            freezeStack = new int[boxes.length];
+        }
+        if (freezeMark > Integer.MAX_VALUE - FREEZE_STATES) {
+            Arrays.fill(freezeStamp, 0);
+            freezeMark = 0;
+        }
+        freezeMark += FREEZE_STATES;
+        freezeTop = 0;
+        frozenOffGoal = false;
+        return frozen(cell) == FROZEN_ALWAYS && frozenOffGoal;
+    }
+
+    private boolean blocks(int cell) {
+        return layout[cell] == L_WALL || boxAt()[cell] != 0;
+    }
+
+    private boolean isGoalOrNotBox(int cell) {
+        return boxAt()[cell] == 0 || isGoal(cell);
+    }
+
+    /* Estados de una caja en la comprobación de cajas congeladas, sumados a freezeMark */
+    private static final int CHECKING = 1, FROZEN = 2, MOVABLE = 3, FREEZE_STATES = 4;
+    /* Resultados de frozen() que no dependen de ninguna caja en comprobación */
+    private static final int FROZEN_ALWAYS = Integer.MAX_VALUE, NOT_FROZEN = -1;
+
+    /**
+     * Comprueba si la caja de la casilla no puede moverse en ningún eje.<br/>
+     * Mientras se comprueba se trata como un muro, para que las cajas vecinas que dependen de ella no
+     * vuelvan a examinarla, pero lo que se deduce de ello es provisional: las cajas que se dan por
+     * congeladas contando con otra en comprobación quedan en la pila hasta que ésta termina, y si resulta
+     * que sí puede moverse se olvidan, para volver a examinarlas si hace falta. Los resultados definitivos
+     * se guardan, de forma que no se repiten.
+     * 
+     * @return NOT_FROZEN si puede moverse, FROZEN_ALWAYS si está congelada, o la menor posición en la pila
+     *         de las cajas en comprobación de las que depende que lo esté
+     */
+    private int frozen(int cell) {
+        int state = freezeStamp[cell] - freezeMark;
+        if (state == FROZEN) {
+            return FROZEN_ALWAYS;
+        } else if (state == MOVABLE) {
+            return NOT_FROZEN;
+        } else if (state == CHECKING) {
+            return freezeDepth[cell];
+        }
+        int depth = freezeTop;
+        freezeStamp[cell] = freezeMark + CHECKING;
+        freezeDepth[cell] = depth;
+        freezeStack[freezeTop++] = cell;
+        int low = blocked(cell, 0);
+        if (low != NOT_FROZEN) {
+            low = Math.min(low, blocked(cell, 1));
+        }
+        if (low != NOT_FROZEN && low < depth) {
+            // sigue dependiendo de una caja anterior, y con ella las que dependen de ésta
+            for (int i = depth; i < freezeTop; i++) {
+                freezeDepth[freezeStack[i]] = Math.min(freezeDepth[freezeStack[i]], low);
+            }
+            return low;
+        }
+        // resultado definitivo: las cajas provisionales que dependían sólo de ésta quedan congeladas si
+        // lo está, y las demás se olvidan
+        while (freezeTop > depth) {
+            int c = freezeStack[--freezeTop];
+            if (low != NOT_FROZEN && freezeDepth[c] >= depth) {
+                freezeStamp[c] = freezeMark + FROZEN;
+                if (!isGoal(c)) {
+                    frozenOffGoal = true;
+                }
+            } else {
+                freezeStamp[c] = freezeMark - 1;
+            }
+        }
+        if (low == NOT_FROZEN) {
+            freezeStamp[cell] = freezeMark + MOVABLE;
+            return NOT_FROZEN;
+        }
+        return FROZEN_ALWAYS;
+    }
+
+    /**
+     * Comprueba si la caja de la casilla no puede moverse en el eje de la dirección dada
+     * 
+     * @return NOT_FROZEN si puede moverse, o el resultado de frozen() de la caja vecina que la bloquea
+     */
+    private int blocked(int cell, int dir) {
+        int a = neighbour(cell, dir), b = neighbour(cell, dir ^ 2);
+        if (a < 0 || b < 0 || layout[a] == L_WALL || layout[b] == L_WALL) {
+            return FROZEN_ALWAYS;
+        }
+        if ((layout[a] & L_DEAD) != 0 && (layout[b] & L_DEAD) != 0) {
+            return FROZEN_ALWAYS;
+        }
+        int low = boxAt()[a] != 0 ? frozen(a) : NOT_FROZEN;
+        if (low != FROZEN_ALWAYS && boxAt()[b] != 0) {
+            low = Math.max(low, frozen(b));
+        }
+        return low;
+    }
+
+    /**
+     * Devuelve el número de caja de cada casilla, creándolo a partir de las posiciones de las cajas
+     * la primera vez que se usa en una copia del tablero
+     */
+    private int[] boxAt() {
+        int at[] = boxAt;
+        if (at == null) {
+            at = new int[layout.length];
+            for (int i = 0; i < boxes.length; i++) {
+                at[boxes[i]] = i + 1;
+            }
+            boxAt = at;
+        }
+        return at;
+    }
+
+    /**
+     * Quita las cajas del número de caja de cada casilla, si ya se ha creado, antes de cambiarlas de sitio
+     */
+    private void unindexBoxes() {
+        if (boxAt != null) {
+            for (int i = 0; i < boxes.length; i++) {
+                boxAt[boxes[i]] = 0;
+            }
+        }
+    }
+
+    /**
+     * Vuelve a poner las cajas en el número de caja de cada casilla, si ya se ha creado
+     */
+    private void indexBoxes() {
+        if (boxAt != null) {
+            for (int i = 0; i < boxes.length; i++) {
+                boxAt[boxes[i]] = i + 1;
+            }
+        }
+    }
+
+    /**
+     * Mueve la caja de una casilla del tablero a otra, que debe estar vacía, 
+     * manteniendo la cuenta de cajas colocadas en metas y el hash de las cajas.
+     * 
+     * @param from casilla de origen
+     * @param to casilla de destino
+     */
+    private void moveBox(int from, int to) {
+        if (isGoal(from)) {
+            onGoals--;
+        }
+        if (isGoal(to)) {
+            onGoals++;
+        }
+        boxHash ^= boxKey(from) ^ boxKey(to);
+        region = -1;
+        int at[] = boxAt();
+        int n = at[from];
+        at[from] = 0;
+        at[to] = n;
+        boxes[n - 1] = to;
+    }
+
+    /**
+     * Coloca al jugador en la casilla dada, actualizando también sus coordenadas.
+     * 
+     * @param cell casilla de destino
+     */
+    private void setPlayer(int cell) {
+        player = cell;
+        pl_x = cell % XLim;
+        pl_y = cell / XLim;
+    }
+
+    /**
+     * Devuelve la casilla vecina en la dirección dada.
+     * 
+     * @param cell Casilla de origen
+     * @param dir Dirección
+     * @return Casilla vecina, o -1 si queda fuera del tablero
+     */
+    int neighbour(int cell, int dir) {
+        int x = cell % XLim + DX[dir];
+        int y = cell / XLim + DY[dir];
+        return inside(x, y) ? cell + offset[dir] : -1;
+    }
+
+    /**
+     * Coloca las cajas y el jugador en las casillas dadas, sin tocar el historial.
+     * Usado por los algoritmos de búsqueda para situar el tablero en cada estado que exploran,
+     * por lo que no se comprueba si el nuevo estado está bloqueado.
+     * 
+     * @param cells Casillas de las cajas, tantas como cajas tenga el tablero
+     * @param pl Casilla del jugador
+     */
+    void setState(int cells[], int pl) {
+        unindexBoxes();
+        onGoals = 0;
+        boxHash = 0;
+        region = -1;
+        for (int i = 0; i < boxes.length; i++) {
+            boxes[i] = cells[i];
+            boxHash ^= boxKey(cells[i]);
+            if (isGoal(cells[i])) {
+                onGoals++;
+            }
+        }
+        indexBoxes();
+        setPlayer(pl);
+    }
+
+    /**
+     * Estado dinámico del tablero (posición de las cajas y del jugador) guardado con snapshot()
+     */
+    public static final class Snapshot {
+        /** Capa estática del tablero del que se tomó, para comprobar que sea del mismo nivel */
+        final byte layout[];
+        final int boxes[];
+        final int player, onGoals;
+        final long boxHash;
+        /** Historial del tablero, su versión y su número de movimientos y empujes al tomarlo */
+        final MoveHistory history;
+        final int version, moves, pushes;
+        final int deadlockAt;
+
+        Snapshot(Board b) {
+            layout = b.layout;
+            boxes = b.boxes.clone();
+            player = b.player;
+            onGoals = b.onGoals;
+            boxHash = b.boxHash;
+            history = b.moveHistory;
+            version = history.version();
+            moves = history.size();
+            pushes = history.pushes();
+            deadlockAt = b.deadlockAt;
+        }
+
+        /**
+         * @return Número de movimientos realizados cuando se guardó
+         */
+        public int moveNumber() {
+            return moves;
+        }
+    }
+
+    /**
+     * Guarda el estado dinámico del tablero, con un coste proporcional al número de cajas
+     * 
+     * @return Estado actual de las cajas y el jugador
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Vuelve a un estado guardado con snapshot() de este tablero o de otro del mismo nivel (ver fork()).<br/>
+     * Si el estado pertenece al historial actual (ver inHistory()), el historial vuelve a ese punto
+     * dejando los movimientos posteriores para rehacerse, como si se hubiesen deshecho. En otro caso
+     * el historial se vacía y el estado restaurado pasa a ser el inicial.<br/>
+     * No se notifica a los escuchadores, que deberán actualizarse por completo si es necesario.
+     * 
+     * @param s Estado guardado
+     * @throws IllegalArgumentException si el estado es de otro nivel
+     */
+    public void restore(Snapshot s) {
+        if (s.layout != layout) {
+            throw new IllegalArgumentException("El estado guardado es de otro nivel");
+        }
+        unindexBoxes();
+        System.arraycopy(s.boxes, 0, boxes, 0, boxes.length);
+        indexBoxes();
+        onGoals = s.onGoals;
+        boxHash = s.boxHash;
+        region = -1;
+        setPlayer(s.player);
+        if (inHistory(s)) {
+            moveHistory.seek(s.moves, s.pushes);
+            deadlockAt = s.deadlockAt;
+        } else {
+            moveHistory.clear();
+            deadlockAt = s.deadlockAt < 0 ? -1 : 0;
+        }
+    }
+
+    /**
+     * Comprueba si un estado guardado con snapshot() pertenece al historial actual del tablero: se guardó
+     * en este tablero y desde entonces no se han sobreescrito los movimientos que llevaban hasta él,
+     * aunque se hayan deshecho o cambiado otros posteriores.
+     * 
+     * @param s Estado guardado
+     * @return true si restore() lo dejaría en el historial
+     */
+    public boolean inHistory(Snapshot s) {
+        return s.history == moveHistory && s.moves <= moveHistory.unchanged(s.version)
+                && s.moves <= moveHistory.size() + moveHistory.redoSize();
+    }
+
+    /**
+     * Construye una copia del tablero que comparte con él la capa estática y copia sólo las cajas
+     * y el jugador, con un coste proporcional al número de cajas: el número de caja de cada casilla se
+     * crea la primera vez que se usa (ver boxAt()). La copia empieza con el historial vacío y sin escuchadores.
+     */
+    private Board(Board b) {
+        XLim = b.XLim;
+        YLim = b.YLim;
+        layout = b.layout;
+        offset = b.offset;
+        boxes = b.boxes.clone();
+        player = b.player;
+        pl_x = b.pl_x;
+        pl_y = b.pl_y;
+        players = b.players;
+        onGoals = b.onGoals;
+        boxHash = b.boxHash;
+        layoutHash = b.layoutHash;
+        region = b.region;
+        deadlockAt = b.deadlockAt < 0 ? -1 : 0;
+        if (b.lowerBound != null) {
+            lowerBound = b.lowerBound.fork(this);
+        }
+    }
+
+    /**
+     * Crea un tablero independiente en el estado actual de éste, compartiendo la capa estática
+     * del nivel. La copia puede moverse desde otro hilo sin afectar al original.
+     * 
+     * @return Copia del tablero, con el historial vacío y sin escuchadores
+     */
+    public Board fork() {
+        return new Board(this);
+    }
+
+    /**
+     * Empuja la caja de la casilla dada una casilla en la dirección indicada, dejando al jugador 
+     * en la casilla que ocupaba la caja. No comprueba que el empuje sea posible ni toca el historial.
+     * 
+     * @param cell Casilla de la caja
+     * @param dir Dirección del empuje
+     */
+    void push(int cell, int dir) {
+        moveBox(cell, cell + offset[dir]);
+        setPlayer(cell);
+    }
+
+    /**
+     * Marca las casillas a las que puede llegar el jugador sin empujar ninguna caja.
+     * 
+     * @param stamp Array del tamaño del tablero en el que se marcan las casillas alcanzables
+     * @param mark Valor con el que se marcan, debe ser distinto de todos los que ya haya en stamp
+     * @param queue Array auxiliar del tamaño del tablero
+     * @return La menor casilla alcanzable, que identifica la zona en la que está el jugador
+     */
+    int reachable(int stamp[], int mark, int queue[]) {
+        int head = 0, tail = 0, min = player;
+        stamp[player] = mark;
+        queue[tail++] = player;
+        while (head < tail) {
+            int cell = queue[head++];
+            for (int dir = 0; dir < 4; dir++) {
+                int next = neighbour(cell, dir);
+                if (next >= 0 && stamp[next] != mark && isEmpty(next)) {
+                    stamp[next] = mark;
+                    queue[tail++] = next;
+                    if (next < min) {
+                        min = next;
+                    }
+                }
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Comprueba si las coordenadas dadas están dentro del tablero.
+     */
+    private boolean inside(int x, int y) {
+        return x >= 0 && y >= 0 && x < XLim && y < YLim;
+    }
+
+    /**
+     * Mueve el jugador por el tablero
+     * 
+     * @param dx Incremento en su posición respecto del eje X
+     * @param dy Incremento en su posición respecto del eje Y
+     * @return Devuelve true si se efectua una operación de empuje 
+     */
+    public boolean movePlayer(int dx, int dy) {        
+        int dir = direction(dx, dy);
+        if (dir < 0) {
+            return false;
+        }
+        int code = step(dir);
+        if (code < 0) {
+            return false;
+        }
+        moveHistory.add(code);
+        checkDeadlock(code);
+        if (listeners != null) {
+            fireMoved(code);
+        }
+        return (code & MoveHistory.PUSH) != 0;
+    }
+
+    /**
+     * Reproduce de una vez una secuencia de movimientos en formato LURD, deteniéndose en el primer
+     * movimiento que no sea posible. Cada letra debe coincidir también en si empuja o no una caja
+     * (mayúscula o minúscula). Los movimientos aplicados se añaden al historial y se notifican a los
+     * escuchadores igual que con movePlayer().
+     *
+     * @param lurd Secuencia de movimientos, se ignoran los espacios y saltos de linea
+     * @return Resultado, con la posición en la cadena del primer caracter no válido si lo hay
+     */
+    public ReplayResult replay(CharSequence lurd) {
+        ReplayResult res = new ReplayResult();
+        for (int i = 0; i < lurd.length(); i++) {
+            char c = lurd.charAt(i);
+            if (Character.isWhitespace(c)) {
+                continue;
+            }
+            int code = MoveHistory.fromChar(c);
+            if (code < 0 || !apply(code)) {
+                res.illegalAt = i;
+                break;
+            }
+            res.moves++;
+            if ((code & MoveHistory.PUSH) != 0) {
+                res.pushes++;
+            }
+        }
+        res.board = this;
+        res.solved = hasWon();
+        return res;
+    }
+
+    /**
+     * Reproduce de una vez una secuencia de movimientos codificados como en MoveHistory, deteniéndose
+     * en el primer movimiento que no sea posible. Ver replay(CharSequence).
+     *
+     * @param codes Movimientos codificados
+     * @param from Posición del primer movimiento a aplicar
+     * @param to Posición siguiente al último movimiento a aplicar
+     * @return Resultado, con la posición en el array del primer movimiento no válido si lo hay
+     */
+    public ReplayResult replay(byte codes[], int from, int to) {
+        ReplayResult res = new ReplayResult();
+        for (int i = from; i < to; i++) {
+            int code = codes[i];
+            if ((code & ~(MoveHistory.DIR | MoveHistory.PUSH)) != 0 || !apply(code)) {
+                res.illegalAt = i;
+                break;
+            }
+            res.moves++;
+            if ((code & MoveHistory.PUSH) != 0) {
+                res.pushes++;
+            }
+        }
+        res.board = this;
+        res.solved = hasWon();
+        return res;
+    }
+
+    /**
+     * Aplica un movimiento codificado, comprobando que sea posible y que empuje caja sólo si lo indica
+     *
+     * @param code Movimiento codificado como en MoveHistory
+     * @return true si se ha aplicado
+     */
+    private boolean apply(int code) {
+        int done = step(code & MoveHistory.DIR);
+        if (done != code) {
+            if (done >= 0) {
+                unstep(done);
+            }
+            return false;
+        }
+        moveHistory.add(code);
+        checkDeadlock(code);
+        if (listeners != null) {
+            fireMoved(code);
+        }
+        return true;
+    }
+
+    /**
+     * Mueve el jugador una casilla en la dirección dada, empujando la caja que encuentre si es posible,
+     * sin guardar el movimiento en el historial.
+     * 
+     * @param dir Dirección del movimiento
+     * @return El movimiento realizado codificado como en MoveHistory, o -1 si no se puede mover
+     */
+    private int step(int dir) {
+        int x = pl_x + DX[dir];
+        int y = pl_y + DY[dir];
+        if (!inside(x, y)) {
+            return -1;
+        }
+        int next = player + offset[dir];
+        if (isEmpty(next)) {
+            setPlayer(next);
+            return dir;
+        }
+        if (isPushable(next) && inside(x + DX[dir], y + DY[dir]) && isEmpty(next + offset[dir])) {
+            moveBox(next, next + offset[dir]);
+            setPlayer(next);
+            return dir | MoveHistory.PUSH;
+        }
+        return -1;
+    }
+
+    /**
+     * Deshace sobre el tablero un movimiento ya realizado, sin tocar el historial.
+     * 
+     * @param code Movimiento codificado como en MoveHistory
+     */
+    private void unstep(int code) {
+        int dir = code & MoveHistory.DIR;
+        int prev = player - offset[dir];
+        // Deshace el empujon de la casilla siguiente
+        if ((code & MoveHistory.PUSH) != 0) {
+            moveBox(player + offset[dir], player);
+        }
+        // actualiza la posición del jugador
+        setPlayer(prev);
+    }
+
+    /**
+     * Comprueba si el empuje recién realizado ha provocado un bloqueo
+     * 
+     * @param code Movimiento realizado
+     */
+    private void checkDeadlock(int code) {
+        if ((code & MoveHistory.PUSH) != 0 && deadlockAt < 0 
+                && isDeadlock(player + offset[code & MoveHistory.DIR])) {
+            deadlockAt = moveHistory.size();
+        }
+    }
+
+    /**
+     * Devuelve la dirección (en orden LURD, índice de DX y DY) correspondiente a un desplazamiento
+     * 
+     * @param dx Incremento respecto del eje X
+     * @param dy Incremento respecto del eje Y
+     * @return Índice de la dirección, o -1 si el desplazamiento no es de una sola casilla
+     */
+    static int direction(int dx, int dy) {
+        for (int dir = 0; dir < 4; dir++) {
+            if (DX[dir] == dx && DY[dir] == dy) {
+                return dir;
+            }
+        }
+        return -1;
+    }
+    
+
+
+    /**
+     * Registra un escuchador de los cambios del tablero
+     * 
+     * @param l Escuchador a añadir
+     */
+    public void addBoardListener(BoardListener l) {
+        int n = listeners == null ? 0 : listeners.length;
+        BoardListener aux[] = new BoardListener[n + 1];
+        if (n > 0) {
+            System.arraycopy(listeners, 0, aux, 0, n);
+        }
+        aux[n] = l;
+        listeners = aux;
+    }
+
+    /**
+     * Elimina un escuchador previamente registrado
+     * 
+     * @param l Escuchador a eliminar
+     */
+    public void removeBoardListener(BoardListener l) {
+        if (listeners == null) {
+            return;
+        }
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == l) {
+                if (listeners.length == 1) {
+                    listeners = null;
+                } else {
+                    BoardListener aux[] = new BoardListener[listeners.length - 1];
+                    System.arraycopy(listeners, 0, aux, 0, i);
+                    System.arraycopy(listeners, i + 1, aux, i, aux.length - i);
+                    listeners = aux;
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Notifica a los escuchadores un movimiento recién realizado
+     * 
+     * @param code Movimiento realizado
+     */
+    private void fireMoved(int code) {
+        int dir = code & MoveHistory.DIR;
+        int prev = player - offset[dir];
+        BoardListener aux[] = listeners;
+        for (int i = 0; i < aux.length; i++) {
+            aux[i].playerMoved(this, prev % XLim, prev / XLim, code);
+        }
+        if ((code & MoveHistory.PUSH) != 0) {
+            for (int i = 0; i < aux.length; i++) {
+                aux[i].boxPushed(this, pl_x, pl_y, dir);
+            }
+            if (hasWon()) {
+                for (int i = 0; i < aux.length; i++) {
+                    aux[i].levelCompleted(this);
+                }
+            }
+        }
+    }
+
+    /** 
+     * Devuelve el número de movimientos realizados por el jugador
+     * 
+     *  @return movimientos 
+     */
+    public int moveNumber() {
+    	return moveHistory.size();
+    }
+
+    /**
+     * Devuelve el historial de movimientos del jugador, que permite por ejemplo exportar
+     * la partida en formato LURD o cargar una solución para reproducirla con redoMove()
+     * 
+     * @return historial de movimientos
+     */
+    public MoveHistory getHistory() {
+    	return moveHistory;
+    }
+    
+    /**
+     * Deshace el último movimiento realizado por el jugador.
+     * 
+     * Puede ser llamado de forma sucesiva y ir deshaciendo los movimientos guardados en cola.
+     */
+    public void undoMove() {    	
+    	int code = moveHistory.undo();
+    	if (code >= 0) {
+    		unstep(code);
+    		if (moveHistory.size() < deadlockAt) {
+    			deadlockAt = -1;
+    		}
+    		BoardListener aux[] = listeners;
+    		if (aux != null) {
+    			for (int i = 0; i < aux.length; i++) {
+    				aux[i].moveUndone(this, pl_x, pl_y, code);
+    			}
+    		}
+    	}
+    }
+
+    /**
+     * Rehace el siguiente movimiento deshecho del historial (o cargado en él).
+     * 
+     * @return Devuelve true si se ha rehecho el movimiento, false si no quedan movimientos por
+     *          rehacer o el siguiente movimiento no es posible en el tablero actual
+     */
+    public boolean redoMove() {
+    	int code = moveHistory.peekRedo();
+    	if (code < 0) {
+    		return false;
+    	}
+    	int done = step(code & MoveHistory.DIR);
+    	if (done != code) {
+    		if (done >= 0) {
+    			unstep(done);
+    		}
+    		return false;
+    	}
+    	moveHistory.redo();
+    	checkDeadlock(code);
+    	if (listeners != null) {
+    		fireMoved(code);
+    	}
+    	return true;
+    }
+
+    /**
+     * Devuelve el estado actual del tablero en el formato de texto de los niveles, 
+     * el mismo que recibe el constructor Board(String).
+     * 
+     * @return Texto del tablero, una linea por fila
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(YLim * (XLim + 1));
+        for (int y = 0; y < YLim; y++) {
+            int len = sb.length();
+            for (int x = 0; x < XLim; x++) {
+                sb.append(get(x, y));
+            }
+            // sin espacios al final de la fila
+            int end = sb.length();
+            while (end > len && sb.charAt(end - 1) == EMPTY) {
+                end--;
+            }
+            sb.setLength(end);
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,23 @@
+package sokoapplet;
+
+/**
+ * Implementación vacía de BoardListener, para extenderla sobreescribiendo sólo los eventos que interesen.
+ * <br/>
+ * <a href="../../src/sokoapplet/BoardAdapter.java">[Pulse aquí para ver el código fuente]</a>
+ *
+ * @author Fernando Carmona Varo
+ */
+public abstract class BoardAdapter implements BoardListener {
+
+    public void playerMoved(Board board, int x, int y, int code) {
+    }
+
+    public void boxPushed(Board board, int x, int y, int dir) {
+    }
+
+    public void moveUndone(Board board, int x, int y, int code) {
+    }
+
+    public void levelCompleted(Board board) {
+    }
+}
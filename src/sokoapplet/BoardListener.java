@@ -0,0 +1,54 @@
+package sokoapplet;
+
+/**
+ * Escuchador de los cambios que se producen en un tablero de juego (Board).
+ * <br/>
+ * <a href="../../src/sokoapplet/BoardListener.java">[Pulse aquí para ver el código fuente]</a>
+ * <hr/>
+ * Permite enganchar al tablero trazas de depuración, métricas o el redibujado de la interfaz sin que
+ * la clase Board tenga que conocerlos. Si no hay ningún escuchador registrado el tablero no hace 
+ * ningún trabajo extra al mover.<br/>
+ * Los eventos se reciben en el mismo hilo que realiza el movimiento. Para implementar sólo algunos
+ * de ellos puede extenderse BoardAdapter.
+ *
+ * @author Fernando Carmona Varo
+ */
+public interface BoardListener {
+
+    /**
+     * El jugador se ha movido una casilla (empujando o no una caja).
+     *
+     * @param board Tablero en el que se produce el movimiento
+     * @param x Ordenada X del jugador antes de moverse
+     * @param y Coordenada Y del jugador antes de moverse
+     * @param code Movimiento realizado, codificado como en MoveHistory
+     */
+    void playerMoved(Board board, int x, int y, int code);
+
+    /**
+     * Una caja ha sido empujada una casilla. Se recibe tras playerMoved en los movimientos de empuje.
+     *
+     * @param board Tablero en el que se produce el empuje
+     * @param x Ordenada X de la caja antes de moverse
+     * @param y Coordenada Y de la caja antes de moverse
+     * @param dir Dirección del empuje
+     */
+    void boxPushed(Board board, int x, int y, int dir);
+
+    /**
+     * Se ha deshecho un movimiento del jugador.
+     *
+     * @param board Tablero en el que se deshace el movimiento
+     * @param x Ordenada X a la que vuelve el jugador
+     * @param y Coordenada Y a la que vuelve el jugador
+     * @param code Movimiento deshecho, codificado como en MoveHistory
+     */
+    void moveUndone(Board board, int x, int y, int code);
+
+    /**
+     * Todas las cajas del tablero han quedado colocadas sobre una meta.
+     *
+     * @param board Tablero completado
+     */
+    void levelCompleted(Board board);
+}
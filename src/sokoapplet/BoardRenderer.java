@@ -0,0 +1,320 @@
+package sokoapplet;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * Dibuja un tablero en una imagen fuera de pantalla, redibujando sólo las casillas que cambian.
+ * <br/>
+ * <a href="../../src/sokoapplet/BoardRenderer.java">[Pulse aquí para ver el código fuente]</a>
+ * <hr/>
+ * Al asignarle un tablero se dibuja una sola vez su capa estática (suelo, muros y metas) en una imagen
+ * aparte, y a partir de ella la imagen completa del tablero. El renderer se registra como escuchador del
+ * tablero (BoardListener), de forma que cada movimiento, empuje o movimiento deshecho marca como sucias
+ * sólo las casillas afectadas. Con flush() se recomponen esas casillas (copiando su fondo de la capa
+ * estática y dibujando encima la caja o el jugador) y se obtiene el rectángulo que hay que volcar a
+ * pantalla, por lo que el coste de cada movimiento no depende del tamaño del nivel.<br/>
+ * Las casillas se copian del atlas del tema (Theme).<br/>
+ * La capa estática también puede dibujarse de antemano en otro hilo con background() y pasarse a
+ * setBoard(), como hace LevelPrefetcher con los niveles siguientes, para que cambiar de nivel sólo
+ * tenga que dibujar las cajas y el jugador.
+ *
+ * @author Fernando Carmona Varo
+ */
+public class BoardRenderer implements BoardListener {
+
+    /**  Tema con las imágenes de cada objeto del tablero */
+    private Theme theme;
+    /**  Tamaño en pixeles de las casillas */
+    private int tSize;
+
+    /**  Tablero que se dibuja */
+    private Board board;
+    /**  Capa estática del nivel e imagen completa del tablero */
+    private BufferedImage background, buffer;
+    /**  Casillas sucias, y marca de las que ya están en la lista */
+    private int dirty[];
+    private boolean isDirty[];
+    private int nDirty;
+    /**  Si hay que redibujar todo el tablero, por ejemplo porque el tema no estaba cargado */
+    private boolean invalid;
+    /**  Si la capa estática está dibujada con el tema actual, y si es una imagen recibida en setBoard() */
+    private boolean backgroundValid, shared;
+
+    /**
+     * Construye el renderer
+     *
+     * @param theme Tema con el que dibujar el tablero
+     */
+    public BoardRenderer(Theme theme) {
+        this.theme = theme;
+        this.tSize = theme.getTileSize();
+    }
+
+    /**
+     * Cambia el tablero a dibujar, dibujando de nuevo su capa estática y el tablero completo
+     *
+     * @param b Tablero nuevo
+     */
+    public void setBoard(Board b) {
+        setBoard(b, null);
+    }
+
+    /**
+     * Cambia el tablero a dibujar, usando una capa estática ya dibujada con background(). La imagen
+     * no se modifica, por lo que puede compartirse entre varios tableros del mismo nivel.
+     *
+     * @param b Tablero nuevo
+     * @param background Capa estática del nivel dibujada con el tema actual, o null para dibujarla
+     */
+    public void setBoard(Board b, BufferedImage background) {
+        if (board != null) {
+            board.removeBoardListener(this);
+        }
+        board = b;
+        board.addBoardListener(this);
+        int size = board.XLim * board.YLim;
+        dirty = new int[size];
+        isDirty = new boolean[size];
+        nDirty = 0;
+        shared = backgroundValid = background != null
+                && background.getWidth() == Math.max(1, getWidth())
+                && background.getHeight() == Math.max(1, getHeight());
+        this.background = backgroundValid ? background : null;
+        invalid = true;
+    }
+
+    /**
+     * Cambia el tema con el que se dibuja, redibujando todo el tablero
+     *
+     * @param theme Tema nuevo
+     */
+    public void setTheme(Theme theme) {
+        this.theme = theme;
+        this.tSize = theme.getTileSize();
+        backgroundValid = false;
+        invalid = true;
+    }
+
+    /**
+     * Marca todo el tablero para redibujarlo, capa estática incluida
+     */
+    public void invalidate() {
+        backgroundValid = false;
+        invalid = true;
+    }
+
+    /**
+     * Marca las cajas y el jugador para redibujarlos, reutilizando la capa estática. Sirve cuando el
+     * tablero ha cambiado sin notificarlo, por ejemplo al restaurar un punto de control (ver Board.restore())
+     */
+    public void invalidatePieces() {
+        invalid = true;
+    }
+
+    /**
+     * @return Ancho en pixeles del tablero
+     */
+    public int getWidth() {
+        return board.XLim * tSize;
+    }
+
+    /**
+     * @return Alto en pixeles del tablero
+     */
+    public int getHeight() {
+        return board.YLim * tSize;
+    }
+
+    /**
+     * Dibuja la capa estática del nivel: suelo, muros y metas
+     *
+     * @return true si el tema estaba cargado
+     */
+    private boolean drawBackground() {
+        int w = Math.max(1, getWidth()), h = Math.max(1, getHeight());
+        if (background == null || shared || background.getWidth() != w || background.getHeight() != h) {
+            background = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            shared = false;
+        }
+        Graphics g = background.getGraphics();
+        paintBackground(g, board, theme);
+        g.dispose();
+        return theme.isLoaded();
+    }
+
+    /**
+     * Dibuja la capa estática de un tablero en una imagen nueva, que puede pasarse a setBoard().
+     * Puede llamarse desde cualquier hilo.
+     *
+     * @param b Tablero
+     * @param theme Tema con el que dibujar
+     * @return Imagen de la capa estática, o null si el tema aún no está cargado
+     */
+    public static BufferedImage background(Board b, Theme theme) {
+        if (!theme.isLoaded()) {
+            return null;
+        }
+        int tSize = theme.getTileSize();
+        BufferedImage img = new BufferedImage(Math.max(1, b.XLim * tSize), Math.max(1, b.YLim * tSize),
+                BufferedImage.TYPE_INT_RGB);
+        Graphics g = img.getGraphics();
+        paintBackground(g, b, theme);
+        g.dispose();
+        return img;
+    }
+
+    private static void paintBackground(Graphics g, Board b, Theme theme) {
+        int tSize = theme.getTileSize();
+        g.setColor(Color.black);
+        g.fillRect(0, 0, Math.max(1, b.XLim * tSize), Math.max(1, b.YLim * tSize));
+        for (int y = 0; y < b.YLim; y++) {
+            for (int x = 0; x < b.XLim; x++) {
+                theme.drawTile(g, staticChar(b, x, y), x * tSize, y * tSize);
+            }
+        }
+    }
+
+    /**
+     * Devuelve el caracter de la capa estática de una casilla, sin cajas ni jugador
+     */
+    private static char staticChar(Board b, int x, int y) {
+        char c = b.get(x, y);
+        switch (c) {
+            case Board.WALL:
+            case Board.EMPTY:
+            case Board.GOAL_EMPTY:
+                return c;
+            case Board.GOAL_BOX:
+            case Board.GOAL_PLAYER:
+                return Board.GOAL_EMPTY;
+            default:
+                return Board.EMPTY;
+        }
+    }
+
+    /**
+     * Recompone en la imagen del tablero las casillas que han cambiado desde la última llamada
+     *
+     * @return Rectángulo (en pixeles relativos al tablero) que ha cambiado, o null si no ha cambiado nada
+     */
+    public Rectangle flush() {
+        if (invalid) {
+            if (!backgroundValid) {
+                backgroundValid = drawBackground();
+            }
+            invalid = !backgroundValid;
+            if (buffer == null || buffer.getWidth() != background.getWidth()
+                    || buffer.getHeight() != background.getHeight()) {
+                buffer = new BufferedImage(background.getWidth(), background.getHeight(), BufferedImage.TYPE_INT_RGB);
+            }
+            Graphics g = buffer.getGraphics();
+            g.drawImage(background, 0, 0, null);
+            for (int i = 0; i < board.boxes.length; i++) {
+                drawCell(g, board.boxes[i]);
+            }
+            drawCell(g, board.player);
+            g.dispose();
+            clearDirty();
+            return new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        if (nDirty == 0) {
+            return null;
+        }
+        Graphics g = buffer.getGraphics();
+        int x0 = Integer.MAX_VALUE, y0 = Integer.MAX_VALUE, x1 = -1, y1 = -1;
+        for (int i = 0; i < nDirty; i++) {
+            int cell = dirty[i];
+            int x = cell % board.XLim * tSize, y = cell / board.XLim * tSize;
+            g.drawImage(background, x, y, x + tSize, y + tSize, x, y, x + tSize, y + tSize, null);
+            drawCell(g, cell);
+            x0 = Math.min(x0, x);
+            y0 = Math.min(y0, y);
+            x1 = Math.max(x1, x + tSize);
+            y1 = Math.max(y1, y + tSize);
+        }
+        g.dispose();
+        clearDirty();
+        return new Rectangle(x0, y0, x1 - x0, y1 - y0);
+    }
+
+    /**
+     * Dibuja el objeto de una casilla sobre su fondo
+     */
+    private void drawCell(Graphics g, int cell) {
+        int x = cell % board.XLim, y = cell / board.XLim;
+        char c = board.get(x, y);
+        if (c != staticChar(board, x, y)) {
+            theme.drawTile(g, c, x * tSize, y * tSize);
+        }
+    }
+
+    private void clearDirty() {
+        for (int i = 0; i < nDirty; i++) {
+            isDirty[dirty[i]] = false;
+        }
+        nDirty = 0;
+    }
+
+    /**
+     * Vuelca a pantalla la parte de la imagen del tablero que cae dentro de la zona de recorte del Graphics
+     *
+     * @param g Graphics en el que dibujar
+     * @param x Posición X del tablero
+     * @param y Posición Y del tablero
+     */
+    public void draw(Graphics g, int x, int y) {
+        if (buffer == null || invalid) {
+            flush();
+        }
+        Rectangle clip = g.getClipBounds();
+        Rectangle r = new Rectangle(x, y, buffer.getWidth(), buffer.getHeight());
+        if (clip != null) {
+            r = r.intersection(clip);
+            if (r.isEmpty()) {
+                return;
+            }
+        }
+        g.drawImage(buffer, r.x, r.y, r.x + r.width, r.y + r.height,
+                r.x - x, r.y - y, r.x - x + r.width, r.y - y + r.height, null);
+    }
+
+    /**
+     * Marca como sucia la casilla dada, si está dentro del tablero
+     */
+    private void mark(int x, int y) {
+        if (x < 0 || y < 0 || x >= board.XLim || y >= board.YLim) {
+            return;
+        }
+        int cell = y * board.XLim + x;
+        if (!isDirty[cell]) {
+            isDirty[cell] = true;
+            dirty[nDirty++] = cell;
+        }
+    }
+
+    public void playerMoved(Board b, int x, int y, int code) {
+        int dir = code & MoveHistory.DIR;
+        mark(x, y);
+        mark(x + Board.DX[dir], y + Board.DY[dir]);
+    }
+
+    public void boxPushed(Board b, int x, int y, int dir) {
+        mark(x, y);
+        mark(x + Board.DX[dir], y + Board.DY[dir]);
+    }
+
+    public void moveUndone(Board b, int x, int y, int code) {
+        int dir = code & MoveHistory.DIR;
+        mark(x, y);
+        mark(x + Board.DX[dir], y + Board.DY[dir]);
+        if ((code & MoveHistory.PUSH) != 0) {
+            mark(x + 2 * Board.DX[dir], y + 2 * Board.DY[dir]);
+        }
+    }
+
+    public void levelCompleted(Board b) {
+    }
+}
@@ -0,0 +1,51 @@
+package sokoapplet;
+
+import java.io.PrintStream;
+
+/**
+ * Escuchador que muestra por un PrintStream los eventos de un tablero.
+ * <br/>
+ * <a href="../../src/sokoapplet/BoardTracer.java">[Pulse aquí para ver el código fuente]</a>
+ * <hr/>
+ * Sustituye a las trazas de depuración que antes imprimía directamente Board en cada movimiento.
+ * Sólo tiene coste cuando se registra en un tablero con Board.addBoardListener().
+ *
+ * @author Fernando Carmona Varo
+ */
+public class BoardTracer implements BoardListener {
+
+    /**  Salida en la que se escriben las trazas */
+    private final PrintStream out;
+
+    /**
+     * Construye un trazador que escribe en la salida estándar
+     */
+    public BoardTracer() {
+        this(System.out);
+    }
+
+    /**
+     * Construye un trazador que escribe en la salida dada
+     *
+     * @param out Salida de las trazas
+     */
+    public BoardTracer(PrintStream out) {
+        this.out = out;
+    }
+
+    public void playerMoved(Board board, int x, int y, int code) {
+        out.println("moved: " + MoveHistory.toChar(code) + " from " + x + "," + y + " (" + board.moveNumber() + ")");
+    }
+
+    public void boxPushed(Board board, int x, int y, int dir) {
+        out.println("pushed: " + x + "," + y + "->" + (x + Board.DX[dir]) + "," + (y + Board.DY[dir]));
+    }
+
+    public void moveUndone(Board board, int x, int y, int code) {
+        out.println("unmoved: " + MoveHistory.toChar(code) + " back to " + x + "," + y + " (" + board.moveNumber() + ")");
+    }
+
+    public void levelCompleted(Board board) {
+        out.println("completed in " + board.moveNumber() + " moves");
+    }
+}
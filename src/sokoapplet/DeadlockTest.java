@@ -0,0 +1,81 @@
+package sokoapplet;
+
+/**
+ * Pruebas de la detección de bloqueos de Board.
+ * <br/>
+ * <a href="../../src/sokoapplet/DeadlockTest.java">[Pulse aquí para ver el código fuente]</a>
+ * <hr/>
+ * Comprueba en unos niveles pequeños qué cajas se dan por bloqueadas al empujarlas (Board.isDeadlock()),
+ * en particular que una caja que puede moverse no haga parecer congeladas a las cajas vecinas que se
+ * examinan después que ella, y que Solver resuelve los niveles que no están bloqueados. Termina con
+ * código de error si alguna comprobación falla.
+ *
+ * <h3>Uso</h3>
+ * <code>java sokoapplet.DeadlockTest</code>
+ *
+ * @author Fernando Carmona Varo
+ */
+public class DeadlockTest {
+
+    /**  Caja que puede moverse en vertical hasta su meta, entre dos cadenas de cajas congeladas en metas */
+    static final String MOVABLE_BETWEEN_CHAINS =
+              "#########\n"
+            + "####.####\n"
+            + "#***$***#\n"
+            + "#### ####\n"
+            + "#   @   #\n"
+            + "#########\n";
+
+    /**  Las mismas cadenas unidas en vertical por la caja central, que ahora puede moverse en horizontal */
+    static final String CHAINS_AROUND_MOVABLE =
+              "#######\n"
+            + "#*#.#*#\n"
+            + "#*# #*#\n"
+            + "#* $ *#\n"
+            + "#*# #*#\n"
+            + "#*#@#*#\n"
+            + "#######\n";
+
+    /**  Dos cajas fuera de meta que se bloquean entre sí contra un muro */
+    static final String FROZEN_PAIR =
+              "######\n"
+            + "#.$$.#\n"
+            + "#  @ #\n"
+            + "######\n";
+
+    private static int failures;
+
+    public static void main(String[] args) {
+        expect("caja movible entre cadenas", MOVABLE_BETWEEN_CHAINS, false, true);
+        expect("cadenas alrededor de una caja movible", CHAINS_AROUND_MOVABLE, false, true);
+        expect("pareja congelada", FROZEN_PAIR, true, false);
+        if (failures > 0) {
+            System.out.println(failures + " comprobaciones fallidas");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    /**
+     * Comprueba, tomando cada caja del nivel como la última empujada, si se detecta un bloqueo, y si
+     * Solver encuentra una solución
+     */
+    private static void expect(String name, String level, boolean deadlock, boolean solvable) {
+        Board board = new Board(level);
+        for (int box : board.boxes) {
+            if (board.isDeadlock(box) != deadlock) {
+                fail(name + ": caja en " + (box % board.XLim) + "," + (box / board.XLim)
+                        + (deadlock ? " no bloqueada" : " bloqueada"));
+            }
+        }
+        Solver.Result r = new Solver(board).solve();
+        if (r.isSolved() != solvable) {
+            fail(name + ": " + r);
+        }
+    }
+
+    private static void fail(String message) {
+        failures++;
+        System.out.println("FALLO " + message);
+    }
+}
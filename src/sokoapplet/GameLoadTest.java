@@ -0,0 +1,185 @@
+package sokoapplet;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Prueba de carga de GameServer: abre muchas sesiones a la vez y mide el rendimiento de las órdenes.
+ * <br/>
+ * <a href="../../src/sokoapplet/GameLoadTest.java">[Pulse aquí para ver el código fuente]</a>
+ * <hr/>
+ * Cada sesión se conecta al servidor y, cuando todas están conectadas, envía una serie de órdenes
+ * MOVE con una dirección al azar (y un UNDO de vez en cuando), esperando cada respuesta antes de
+ * enviar la siguiente y midiendo lo que tarda. Al final se muestran los movimientos por segundo y
+ * la latencia media, mediana, percentil 99 y máxima.<br/>
+ * Con -embedded se arranca el servidor en la misma máquina virtual, con el pack dado.
+ *
+ * <h3>Uso</h3>
+ * <code>java sokoapplet.GameLoadTest [-port N] [-sessions N] [-moves N] [-embedded pack]</code>
+ *
+ * @author Fernando Carmona Varo
+ */
+public class GameLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        int port = GameServer.PORT, sessions = 10000, moves = 100;
+        String embedded = null;
+        for (int i = 0; i < args.length; i++) {
+            if (i + 1 < args.length && args[i].equals("-port")) {
+                port = Integer.parseInt(args[++i]);
+            } else if (i + 1 < args.length && args[i].equals("-sessions")) {
+                sessions = Integer.parseInt(args[++i]);
+            } else if (i + 1 < args.length && args[i].equals("-moves")) {
+                moves = Integer.parseInt(args[++i]);
+            } else if (i + 1 < args.length && args[i].equals("-embedded")) {
+                embedded = args[++i];
+            } else {
+                System.err.println("Uso: java sokoapplet.GameLoadTest [-port N] [-sessions N] [-moves N] [-embedded pack]");
+                System.exit(1);
+            }
+        }
+        GameServer server = null;
+        if (embedded != null) {
+            server = new GameServer(Solver.openPack(new File(embedded)), 0);
+            port = server.getPort();
+            final GameServer s = server;
+            Thread t = new Thread(new Runnable() {
+                public void run() {
+                    s.serve();
+                }
+            }, "game-server");
+            t.setDaemon(true);
+            t.start();
+        }
+        run(port, sessions, moves);
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    /**
+     * Lanza la prueba de carga y muestra los resultados
+     *
+     * @param port Puerto del servidor local
+     * @param sessions Número de sesiones simultáneas
+     * @param moves Órdenes por sesión
+     */
+    static void run(final int port, final int sessions, final int moves) throws InterruptedException {
+        final long latencies[] = new long[sessions * moves];
+        final CountDownLatch connected = new CountDownLatch(sessions), go = new CountDownLatch(1),
+                finished = new CountDownLatch(sessions);
+        final AtomicInteger failed = new AtomicInteger();
+        ExecutorService pool = GameServer.newExecutor("load-test");
+        for (int s = 0; s < sessions; s++) {
+            final int id = s;
+            pool.execute(new Runnable() {
+                public void run() {
+                    Socket socket = null;
+                    boolean counted = false;
+                    try {
+                        socket = connect(port);
+                        connected.countDown();
+                        counted = true;
+                        go.await();
+                        play(socket, new Random(id), latencies, id * moves, moves);
+                    } catch (Exception e) {
+                        failed.incrementAndGet();
+                        if (!counted) {
+                            connected.countDown();
+                        }
+                    } finally {
+                        finished.countDown();
+                        if (socket != null) {
+                            try {
+                                socket.close();
+                            } catch (IOException e) {
+                                // ya cerrado
+                            }
+                        }
+                    }
+                }
+            });
+        }
+        connected.await();
+        long start = System.nanoTime();
+        go.countDown();
+        finished.await();
+        long nanos = Math.max(1, System.nanoTime() - start);
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+
+        // las sesiones fallidas dejan a 0 sus latencias, que no se cuentan
+        long sorted[] = latencies.clone();
+        Arrays.sort(sorted);
+        int from = 0;
+        while (from < sorted.length && sorted[from] == 0) {
+            from++;
+        }
+        int n = sorted.length - from;
+        long sum = 0;
+        for (int i = from; i < sorted.length; i++) {
+            sum += sorted[i];
+        }
+        System.out.println(sessions + " sesiones (" + failed.get() + " fallidas), " + n + " órdenes en "
+                + (nanos / 1000000) + "ms: " + (long) (n / (nanos / 1e9)) + " movimientos/s");
+        if (n > 0) {
+            System.out.printf("latencia: media=%.3fms p50=%.3fms p99=%.3fms max=%.3fms%n",
+                    sum / 1e6 / n, sorted[from + n / 2] / 1e6, sorted[from + (int) (n * 0.99)] / 1e6,
+                    sorted[sorted.length - 1] / 1e6);
+        }
+    }
+
+    /**
+     * Conecta con el servidor, reintentando si la cola de conexiones pendientes está llena
+     */
+    private static Socket connect(int port) throws IOException, InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                Socket socket = new Socket("127.0.0.1", port);
+                socket.setTcpNoDelay(true);
+                return socket;
+            } catch (IOException e) {
+                if (attempt >= 20) {
+                    throw e;
+                }
+                Thread.sleep(50 + attempt * 50);
+            }
+        }
+    }
+
+    /**
+     * Juega una sesión, guardando la latencia de cada orden
+     */
+    private static void play(Socket socket, Random rnd, long latencies[], int pos, int moves) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+        OutputStream out = socket.getOutputStream();
+        byte commands[][] = new byte[5][];
+        for (int dir = 0; dir < 4; dir++) {
+            commands[dir] = ("MOVE " + MoveHistory.LURD.charAt(dir) + "\n").getBytes("UTF-8");
+        }
+        commands[4] = "UNDO\n".getBytes("UTF-8");
+        for (int i = 0; i < moves; i++) {
+            int c = rnd.nextInt(10);
+            long t = System.nanoTime();
+            out.write(commands[c < 4 ? c : c < 8 ? c - 4 : 4]);
+            out.flush();
+            String reply = in.readLine();
+            latencies[pos + i] = Math.max(1, System.nanoTime() - t);
+            if (reply == null) {
+                throw new IOException("Conexión cerrada por el servidor");
+            }
+        }
+        out.write("QUIT\n".getBytes("UTF-8"));
+        out.flush();
+    }
+}
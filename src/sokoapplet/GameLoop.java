@@ -0,0 +1,185 @@
+package sokoapplet;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bucle de juego que procesa las órdenes del jugador en un hilo propio, fuera del hilo de eventos de AWT.
+ * <br/>
+ * <a href="../../src/sokoapplet/GameLoop.java">[Pulse aquí para ver el código fuente]</a>
+ * <hr/>
+ * El hilo de eventos sólo añade las órdenes (movimientos, deshacer, cambio de nivel...) a una cola
+ * limitada, y el bucle las aplica sobre el tablero a través de un Handler. En cada vuelta se aplican
+ * las órdenes que haya en la cola y después se dibuja una sola vez, de forma que las pulsaciones
+ * repetidas al mantener una tecla se agrupan en un único dibujado. Cada vuelta deja de aplicar órdenes
+ * cuando ha gastado el tiempo de un dibujado, y las que quedan pasan a la siguiente, para que una cola
+ * que se sigue llenando (la repetición automática de una tecla) no retrase el dibujado indefinidamente.
+ * El número de dibujados por segundo está limitado, y las órdenes que llegan mientras tanto se acumulan
+ * para la siguiente vuelta.<br/>
+ * Si la cola se llena (por ejemplo mientras se aplica una orden muy larga) las órdenes nuevas se descartan,
+ * para que el jugador no vea el juego seguir moviéndose mucho después de soltar la tecla.<br/>
+ * Todo acceso al tablero desde otros hilos debe sincronizarse con getLock(). El dibujado en pantalla
+ * (paint()) no debe tomarlo, sino volcar la última imagen terminada por render(), para que el hilo de
+ * eventos no espere a que se apliquen las órdenes.
+ *
+ * @author Fernando Carmona Varo
+ */
+public class GameLoop implements Runnable {
+
+    /**
+     * Receptor de las órdenes del bucle, que las aplica sobre el juego
+     */
+    public interface Handler {
+        /**
+         * Aplica una orden. Se llama desde el hilo del bucle y con el cerrojo tomado.
+         *
+         * @param command Orden recibida con submit()
+         */
+        void handle(int command);
+
+        /**
+         * Dibuja el resultado de las órdenes aplicadas desde el último dibujado. Se llama desde el
+         * hilo del bucle y con el cerrojo tomado.
+         */
+        void render();
+    }
+
+    /**  Receptor de las órdenes */
+    private final Handler handler;
+    /**  Cola de órdenes pendientes */
+    private final BlockingQueue<Integer> queue;
+    /**  Cerrojo del estado del juego */
+    private final Object lock = new Object();
+    /**  Tiempo mínimo entre dibujados, en nanosegundos */
+    private final long frameNanos;
+    /**  Hilo del bucle, null si está parado */
+    private volatile Thread thread;
+
+    /* Estadísticas de los dibujados */
+    private volatile long frames, commands, lastFrameNanos, maxFrameNanos, totalFrameNanos;
+
+    /**
+     * Construye el bucle de juego, sin arrancarlo
+     *
+     * @param handler Receptor de las órdenes
+     * @param capacity Número máximo de órdenes pendientes
+     * @param fps Número máximo de dibujados por segundo
+     */
+    public GameLoop(Handler handler, int capacity, int fps) {
+        this.handler = handler;
+        this.queue = new ArrayBlockingQueue<Integer>(capacity);
+        this.frameNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, fps);
+    }
+
+    /**
+     * @return Cerrojo con el que sincronizar los accesos al estado del juego
+     */
+    public Object getLock() {
+        return lock;
+    }
+
+    /**
+     * Añade una orden a la cola. Puede llamarse desde cualquier hilo.
+     *
+     * @param command Orden para el Handler
+     * @return false si la cola está llena y la orden se ha descartado
+     */
+    public boolean submit(int command) {
+        return queue.offer(command);
+    }
+
+    /**
+     * Arranca el hilo del bucle
+     */
+    public synchronized void start() {
+        if (thread == null) {
+            thread = new Thread(this, "game-loop");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Para el hilo del bucle. Las órdenes pendientes se conservan y se aplican al volver a arrancarlo,
+     * ya que algunas (como el aviso de una tarea en segundo plano terminada) no deben perderse.
+     */
+    public synchronized void stop() {
+        Thread t = thread;
+        thread = null;
+        if (t != null) {
+            t.interrupt();
+        }
+    }
+
+    public void run() {
+        Thread self = Thread.currentThread();
+        long next = 0;
+        try {
+            while (thread == self) {
+                Integer cmd = queue.take();
+                // limita los dibujados por segundo, acumulando mientras tanto las órdenes
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    } catch (InterruptedException e) {
+                        // parada del bucle: se aplica la orden ya sacada de la cola antes de salir
+                    }
+                }
+                long start = System.nanoTime();
+                int n = 0;
+                synchronized (lock) {
+                    do {
+                        handler.handle(cmd);
+                        n++;
+                    } while (System.nanoTime() - start < frameNanos && (cmd = queue.poll()) != null);
+                    handler.render();
+                }
+                long end = System.nanoTime();
+                commands += n;
+                frames++;
+                lastFrameNanos = end - start;
+                totalFrameNanos += lastFrameNanos;
+                maxFrameNanos = Math.max(maxFrameNanos, lastFrameNanos);
+                next = start + frameNanos;
+            }
+        } catch (InterruptedException e) {
+            // parada del bucle
+        }
+    }
+
+    /**
+     * @return Número de dibujados realizados
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * @return Tiempo del último dibujado (aplicar las órdenes y dibujar), en milisegundos
+     */
+    public double getLastFrameMillis() {
+        return lastFrameNanos / 1e6;
+    }
+
+    /**
+     * @return Tiempo medio de los dibujados, en milisegundos
+     */
+    public double getAverageFrameMillis() {
+        return frames == 0 ? 0 : totalFrameNanos / 1e6 / frames;
+    }
+
+    /**
+     * @return Tiempo máximo de un dibujado, en milisegundos
+     */
+    public double getMaxFrameMillis() {
+        return maxFrameNanos / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("frames=%d commands=%d last=%.3fms avg=%.3fms max=%.3fms",
+                frames, commands, getLastFrameMillis(), getAverageFrameMillis(), getMaxFrameMillis());
+    }
+}
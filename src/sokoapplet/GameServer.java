@@ -0,0 +1,285 @@
+package sokoapplet;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Servidor de partidas sin interfaz gráfica, que aloja muchas partidas independientes a la vez.
+ * <br/>
+ * <a href="../../src/sokoapplet/GameServer.java">[Pulse aquí para ver el código fuente]</a>
+ * <hr/>
+ * Cada conexión es una partida (sesión) con su propio tablero, nivel actual e historial, y se atiende
+ * en su propio hilo: hilos virtuales si la máquina virtual los tiene (Java 21 o posterior), o si no un
+ * pool de hilos normales. Las sesiones no comparten estado entre sí salvo los niveles del pack: cada
+ * nivel se construye una sola vez y las sesiones juegan sobre copias (Board.fork()) que comparten su
+ * capa estática, por lo que crear una sesión o cambiar de nivel sólo copia las cajas y el jugador. Al
+ * jugar, cada sesión ocupa además su historial y un índice de las cajas por casilla, que su tablero crea
+ * con el primer movimiento.
+ *
+ * <h3>Protocolo</h3>
+ * Texto por lineas, una orden por linea y una linea de respuesta por orden:
+ * <ul>
+ * <li><code>MOVE lurd</code>: aplica uno o varios movimientos en formato LURD (se aceptan en minúscula
+ * aunque empujen), parando en el primero que no sea posible.</li>
+ * <li><code>UNDO</code>: deshace el último movimiento.</li>
+ * <li><code>RESTART</code>: reinicia el nivel actual.</li>
+ * <li><code>NEXT</code>: pasa al siguiente nivel.</li>
+ * <li><code>LEVEL n</code>: pasa al nivel n (desde 1).</li>
+ * <li><code>STATE</code>: estado de la partida y tablero.</li>
+ * <li><code>QUIT</code>: cierra la sesión.</li>
+ * </ul>
+ * La respuesta es <code>OK nivel movimientos empujes resuelto</code> (resuelto es 0 o 1), seguida en el
+ * caso de STATE de las filas del tablero separadas por '|', o bien <code>ERR mensaje</code>. Si un MOVE
+ * se detiene en un movimiento no válido se responde <code>ERR illegal n</code>, con el número de
+ * movimientos que sí se han aplicado.
+ *
+ * <h3>Uso</h3>
+ * <code>java sokoapplet.GameServer [-port N] pack</code>
+ * <br/>Para medir su rendimiento ver GameLoadTest.
+ *
+ * @author Fernando Carmona Varo
+ */
+public class GameServer {
+
+    /**  Puerto por defecto */
+    public static final int PORT = 7654;
+
+    /**  Niveles del pack */
+    private final LevelSource levels;
+    /**  Tablero inicial de cada nivel, construido la primera vez que se pide */
+    private final AtomicReferenceArray<Board> templates;
+    /**  Socket del servidor */
+    private final ServerSocket server;
+    /**  Hilos de las sesiones */
+    private final ExecutorService sessions;
+    /**  Sesiones abiertas y sesiones atendidas en total */
+    private final AtomicInteger open = new AtomicInteger(), total = new AtomicInteger();
+
+    /**
+     * Construye el servidor, escuchando en el puerto dado de la máquina local
+     *
+     * @param levels Niveles del pack
+     * @param port Puerto, o 0 para usar cualquiera libre
+     * @throws IOException si no se puede abrir el puerto o el pack no tiene niveles
+     */
+    public GameServer(LevelSource levels, int port) throws IOException {
+        // cada sesión empieza en el primer nivel
+        if (levels.size() == 0) {
+            throw new IOException("El pack no tiene niveles");
+        }
+        this.levels = levels;
+        this.templates = new AtomicReferenceArray<Board>(levels.size());
+        this.server = new ServerSocket(port, 16384, InetAddress.getLoopbackAddress());
+        this.sessions = newExecutor("game-session");
+    }
+
+    /**
+     * Crea un ejecutor con un hilo por tarea: hilos virtuales si la máquina virtual los tiene, o si no
+     * un pool de hilos normales (demonio) que crece según haga falta
+     *
+     * @param name Nombre de los hilos normales
+     * @return Ejecutor
+     */
+    static ExecutorService newExecutor(final String name) {
+        try {
+            // Executors.newVirtualThreadPerTaskExecutor(), disponible desde Java 21
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            return Executors.newCachedThreadPool(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(null, r, name, 256 << 10);
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+    }
+
+    /**
+     * @return Puerto en el que escucha el servidor
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * @return Número de sesiones abiertas
+     */
+    public int openSessions() {
+        return open.get();
+    }
+
+    /**
+     * Acepta conexiones hasta que se cierra el servidor, atendiendo cada una en su propio hilo
+     */
+    public void serve() {
+        while (!server.isClosed()) {
+            try {
+                final Socket socket = server.accept();
+                sessions.execute(new Runnable() {
+                    public void run() {
+                        session(socket);
+                    }
+                });
+            } catch (IOException ex) {
+                if (!server.isClosed()) {
+                    Logger.getLogger(GameServer.class.getName()).log(Level.WARNING, "Error aceptando conexión", ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Cierra el servidor y todas las sesiones
+     */
+    public void close() throws IOException {
+        server.close();
+        sessions.shutdownNow();
+    }
+
+    /**
+     * Devuelve una copia del tablero inicial de un nivel, que comparte con el resto la capa estática
+     *
+     * @param level Número de nivel, desde 0
+     * @return Tablero nuevo
+     */
+    Board newBoard(int level) {
+        Board b = templates.get(level);
+        if (b == null) {
+            templates.compareAndSet(level, null, levels.getBoard(level));
+            b = templates.get(level);
+        }
+        return b.fork();
+    }
+
+    /**
+     * Atiende una sesión hasta que se cierra la conexión o se recibe QUIT
+     */
+    private void session(Socket socket) {
+        open.incrementAndGet();
+        total.incrementAndGet();
+        try {
+            socket.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+            Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"));
+            Session s = new Session();
+            for (String line; (line = in.readLine()) != null; ) {
+                String reply = s.execute(line.trim());
+                if (reply == null) {
+                    break;
+                }
+                out.write(reply);
+                out.write('\n');
+                out.flush();
+            }
+        } catch (IOException ex) {
+            // conexión cerrada por el cliente
+        } finally {
+            open.decrementAndGet();
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                // ya cerrado
+            }
+        }
+    }
+
+    /**
+     * Estado de una partida: nivel actual y su tablero
+     */
+    class Session {
+        int level;
+        Board board = newBoard(0);
+
+        /**
+         * Ejecuta una orden del protocolo
+         *
+         * @param line Orden recibida
+         * @return Respuesta, o null para cerrar la sesión
+         */
+        String execute(String line) {
+            int sp = line.indexOf(' ');
+            String cmd = (sp < 0 ? line : line.substring(0, sp)).toUpperCase();
+            String arg = sp < 0 ? "" : line.substring(sp + 1).trim();
+            if (cmd.equals("MOVE")) {
+                for (int i = 0; i < arg.length(); i++) {
+                    int code = MoveHistory.fromChar(arg.charAt(i));
+                    if (code < 0) {
+                        return "ERR movimiento no válido '" + arg.charAt(i) + "'";
+                    }
+                    int dir = code & MoveHistory.DIR;
+                    int moves = board.moveNumber();
+                    board.movePlayer(Board.DX[dir], Board.DY[dir]);
+                    if (board.moveNumber() == moves) {
+                        return "ERR illegal " + i;
+                    }
+                }
+            } else if (cmd.equals("UNDO")) {
+                board.undoMove();
+            } else if (cmd.equals("RESTART")) {
+                board = newBoard(level);
+            } else if (cmd.equals("NEXT")) {
+                if (level + 1 < levels.size()) {
+                    level++;
+                }
+                board = newBoard(level);
+            } else if (cmd.equals("LEVEL")) {
+                int n;
+                try {
+                    n = Integer.parseInt(arg) - 1;
+                } catch (NumberFormatException e) {
+                    n = -1;
+                }
+                if (n < 0 || n >= levels.size()) {
+                    return "ERR nivel no válido: " + arg;
+                }
+                level = n;
+                board = newBoard(level);
+            } else if (cmd.equals("STATE")) {
+                return state().append(' ').append(board.toString().replace('\n', '|')).toString();
+            } else if (cmd.equals("QUIT")) {
+                return null;
+            } else {
+                return "ERR orden desconocida: " + cmd;
+            }
+            return state().toString();
+        }
+
+        private StringBuilder state() {
+            return new StringBuilder(32).append("OK ").append(level + 1).append(' ')
+                    .append(board.moveNumber()).append(' ').append(board.getHistory().pushes())
+                    .append(' ').append(board.hasWon() ? 1 : 0);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = PORT;
+        int i = 0;
+        if (args.length > 1 && args[0].equals("-port")) {
+            port = Integer.parseInt(args[1]);
+            i = 2;
+        }
+        if (args.length - i != 1) {
+            System.err.println("Uso: java sokoapplet.GameServer [-port N] pack");
+            System.exit(1);
+        }
+        GameServer server = new GameServer(Solver.openPack(new File(args[i])), port);
+        System.err.println("Servidor escuchando en el puerto " + server.getPort());
+        server.serve();
+    }
+}
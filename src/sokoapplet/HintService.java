@@ -0,0 +1,474 @@
+package sokoapplet;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Servicio de pistas: dado el estado de un tablero, devuelve el siguiente empuje de una solución.
+ * <br/>
+ * <a href="../../src/sokoapplet/HintService.java">[Pulse aquí para ver el código fuente]</a>
+ * <hr/>
+ * Las soluciones se buscan con Solver, y de cada solución encontrada se guardan en una caché todos
+ * los estados por los que pasa junto con los empujes que faltan desde cada uno, de forma que al seguir
+ * las pistas (o jugar por el mismo camino) las siguientes se responden sin volver a resolver.<br/>
+ * La caché se indexa por el hash del estado (Board.stateHash(), que no depende de dónde esté el jugador
+ * dentro de su zona) combinado con el hash de la capa estática del nivel (Board.layoutHash(), calculado
+ * una vez por nivel), para no confundir niveles distintos del mismo pack. Tiene un tamaño máximo y descarta los estados usados hace más tiempo (LRU).<br/>
+ * Opcionalmente se guarda en un archivo (uno por pack de niveles), que se lee al construir el servicio,
+ * de forma que las pistas ya calculadas en otras sesiones son inmediatas. Cada solución nueva se añade
+ * al final del archivo, y el archivo sólo se reescribe entero al leerlo si tiene muchas más entradas
+ * de las que caben en la caché o alguna linea dañada.
+ *
+ * <h3>Formato del archivo</h3>
+ * Una linea por solución, de la usada hace más tiempo a la más reciente, con tres campos separados por
+ * tabuladores: el número de empujes de la solución; los estados por los que pasa, cada uno como
+ * posición:hash (el hash en hexadecimal y la posición del primer empuje que falta desde él), separados por
+ * espacios; y los empujes separados por espacios, cada uno como casilla de la caja * 4 + dirección (ver
+ * Board.DX). Así cada solución ocupa en el archivo y en memoria lo mismo que sus empujes, y no una copia
+ * de los que faltan por cada estado.<br/>
+ * Los estados en los que Solver no encuentra solución sólo se recuerdan durante la sesión y no se guardan
+ * en el archivo, ya que la búsqueda descarta empujes con una detección de bloqueos aproximada y su
+ * resultado no demuestra que el estado no tenga solución.
+ *
+ * @author Fernando Carmona Varo
+ */
+public class HintService {
+
+    /**  Resultado de lookup() cuando el estado no está en la caché */
+    public static final int MISS = -1;
+    /**  Resultado de lookup() cuando se sabe que el estado no tiene solución */
+    public static final int NO_SOLUTION = -2;
+
+    /**
+     * Empujes que faltan desde un estado: los del array a partir de la posición dada. Todos los
+     * estados de una misma solución comparten el array.
+     */
+    private static final class Suffix {
+        final int pushes[];
+        final int from;
+
+        Suffix(int pushes[], int from) {
+            this.pushes = pushes;
+            this.from = from;
+        }
+    }
+
+    /**  Estados resueltos, en orden de uso */
+    private final LinkedHashMap<Long, Suffix> cache;
+    /**  Archivo en el que se guarda la caché, o null */
+    private final File file;
+    /**  Número máximo de estados en la caché */
+    private final int capacity;
+    /**  Tiempo máximo para buscar una solución, en milisegundos */
+    private long timeLimit = 5000;
+    /**  Hilo en el que se buscan las soluciones pedidas con solveAsync() */
+    private ExecutorService solver;
+
+    /* Métricas */
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+    private final AtomicLong solves = new AtomicLong(), solveMillis = new AtomicLong();
+
+    /**
+     * Construye el servicio, leyendo la caché del archivo si existe
+     *
+     * @param file Archivo en el que guardar la caché, o null para no guardarla
+     * @param capacity Número máximo de estados en la caché
+     */
+    public HintService(File file, final int capacity) {
+        this.file = file;
+        this.capacity = capacity;
+        this.cache = new LinkedHashMap<Long, Suffix>(16, 0.75f, true) {
+            static final long serialVersionUID = 0;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Suffix> eldest) {
+                return size() > capacity;
+            }
+        };
+        if (file != null && file.exists()) {
+            try {
+                load();
+            } catch (IOException ex) {
+                Logger.getLogger(HintService.class.getName()).log(Level.WARNING, "No se puede leer " + file, ex);
+            }
+        }
+    }
+
+    /**
+     * Devuelve el archivo de caché de un pack de niveles, en el directorio .sokoapplet del usuario
+     *
+     * @param pack Nombre o dirección del pack
+     * @return Archivo de caché, o null si no se puede acceder al directorio del usuario
+     */
+    public static File fileFor(String pack) {
+        try {
+            String name = pack.substring(pack.lastIndexOf('/') + 1).replaceAll("[^A-Za-z0-9._-]", "_");
+            File dir = new File(System.getProperty("user.home"), ".sokoapplet");
+            return new File(dir, "hints-" + name + ".txt");
+        } catch (SecurityException e) { // applet sin permisos
+            return null;
+        }
+    }
+
+    /**
+     * @param millis Tiempo máximo para buscar cada solución
+     */
+    public void setTimeLimit(long millis) {
+        timeLimit = millis;
+    }
+
+    /**
+     * Clave de la caché para el estado del tablero
+     */
+    static long key(Board b) {
+        return b.layoutHash() ^ b.stateHash();
+    }
+
+    /**
+     * Busca en la caché el siguiente empuje para el estado del tablero, sin resolver
+     *
+     * @param b Tablero
+     * @return Empuje (casilla de la caja * 4 + dirección), MISS o NO_SOLUTION
+     */
+    public int lookup(Board b) {
+        int push = find(key(b));
+        (push == MISS ? misses : hits).incrementAndGet();
+        return push;
+    }
+
+    /**
+     * Busca una clave en la caché, sin contarla en las métricas
+     */
+    private int find(long key) {
+        Suffix e;
+        synchronized (cache) {
+            e = cache.get(key);
+        }
+        if (e == null) {
+            return MISS;
+        }
+        return e.from < e.pushes.length ? e.pushes[e.from] : NO_SOLUTION;
+    }
+
+    /**
+     * Devuelve el siguiente empuje para el estado del tablero, resolviéndolo si no está en la caché
+     *
+     * @param b Tablero, que no se modifica
+     * @return Empuje (casilla de la caja * 4 + dirección), NO_SOLUTION, o MISS si no se ha encontrado
+     *          solución en el tiempo máximo
+     */
+    public int hint(Board b) {
+        int push = lookup(b);
+        if (push != MISS) {
+            return push;
+        }
+        long key = key(b);
+        solve(b.fork());
+        return find(key);
+    }
+
+    /**
+     * Busca en segundo plano la solución del estado del tablero, si no está ya en la caché
+     *
+     * @param b Tablero, del que se toma una copia en el momento de la llamada
+     * @param done Se llama (desde el hilo de búsqueda) al terminar
+     */
+    public synchronized void solveAsync(Board b, final Runnable done) {
+        if (solver == null) {
+            solver = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "hint-solver");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        final Board copy = b.fork();
+        solver.execute(new Runnable() {
+            public void run() {
+                try {
+                    solve(copy);
+                } finally {
+                    done.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * Resuelve el tablero y guarda en la caché todos los estados de la solución
+     *
+     * @param b Tablero, que se modifica
+     */
+    private void solve(Board b) {
+        long key = key(b);
+        if (find(key) != MISS) {
+            return;
+        }
+        Solver solver = new Solver(b);
+        solver.setTimeLimit(timeLimit);
+        Solver.Result res = solver.solve();
+        solves.incrementAndGet();
+        solveMillis.addAndGet(res.millis);
+        if (res.status == Solver.Status.UNSOLVABLE) {
+            put(key, new Suffix(new int[0], 0)); // sólo en memoria, ver la descripción de la clase
+            return;
+        }
+        if (!res.isSolved()) {
+            return; // sin resultado, se podrá volver a intentar
+        }
+        // extrae los empujes de la solución y la clave del estado antes de cada uno
+        int pushes[] = new int[res.pushes];
+        long keys[] = new long[res.pushes];
+        int n = 0;
+        for (int i = 0; i < res.solution.length(); i++) {
+            int code = MoveHistory.fromChar(res.solution.charAt(i));
+            if ((code & MoveHistory.PUSH) != 0) {
+                int dir = code & MoveHistory.DIR;
+                keys[n] = key(b);
+                pushes[n++] = (b.player + b.offset[dir]) << 2 | dir;
+            }
+            b.movePlayer(Board.DX[code & MoveHistory.DIR], Board.DY[code & MoveHistory.DIR]);
+        }
+        synchronized (cache) {
+            for (int i = 0; i < n; i++) {
+                cache.put(keys[i], new Suffix(pushes, i));
+            }
+        }
+        if (file != null) {
+            try {
+                append(pushes, keys, n);
+            } catch (IOException ex) {
+                Logger.getLogger(HintService.class.getName()).log(Level.WARNING, "No se puede guardar " + file, ex);
+            } catch (SecurityException ex) {
+                // applet sin permisos, la caché sólo dura la sesión
+            }
+        }
+    }
+
+    /**
+     * Escribe una linea del archivo: una solución y los estados que la usan
+     *
+     * @param pushes Empujes de la solución
+     * @param keys Hash de cada estado
+     * @param from Posición en pushes del primer empuje que falta desde cada estado
+     * @param n Número de estados
+     */
+    private static void write(PrintWriter out, int pushes[], long keys[], int from[], int n) {
+        StringBuilder sb = new StringBuilder(16 * n + 4 * pushes.length);
+        sb.append(pushes.length).append('\t');
+        for (int i = 0; i < n; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(from[i]).append(':').append(Long.toHexString(keys[i]));
+        }
+        sb.append('\t');
+        for (int i = 0; i < pushes.length; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(pushes[i]);
+        }
+        out.println(sb);
+    }
+
+    /**
+     * Añade al final del archivo una solución recién encontrada
+     */
+    private synchronized void append(int pushes[], long keys[], int n) throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null) {
+            dir.mkdirs();
+        }
+        int from[] = new int[n];
+        for (int i = 0; i < n; i++) {
+            from[i] = i;
+        }
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8"));
+        try {
+            write(out, pushes, keys, from, n);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void put(long key, Suffix e) {
+        synchronized (cache) {
+            cache.put(key, e);
+        }
+    }
+
+    /**
+     * Lee la caché del archivo. Las lineas dañadas (por ejemplo la última si se cortó al escribirla) y
+     * las de estados sin solución que guardaban versiones anteriores se descartan, y si hay alguna, o el
+     * archivo tiene muchas más entradas de las que caben en la caché, se vuelve a escribir entero.
+     */
+    private void load() throws IOException {
+        int read = 0;
+        boolean damaged = false;
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            for (String line; (line = in.readLine()) != null; ) {
+                if (line.trim().length() == 0) {
+                    continue;
+                }
+                int n = parse(line);
+                if (n < 0) {
+                    damaged = true;
+                } else {
+                    read += n;
+                }
+            }
+        } finally {
+            in.close();
+        }
+        if (damaged || read > 2 * Math.max(capacity, 1)) {
+            save();
+        }
+    }
+
+    /**
+     * Añade a la caché los estados de una linea del archivo, todos con el mismo array de empujes
+     *
+     * @return Número de estados leídos, o -1 si la linea no es válida o no tiene empujes
+     */
+    private int parse(String line) {
+        String fields[] = line.split("\t", -1);
+        if (fields.length != 3) {
+            return -1;
+        }
+        try {
+            int length = Integer.parseInt(fields[0]);
+            if (length == 0) {
+                return -1;
+            }
+            String p[] = fields[2].length() == 0 ? new String[0] : fields[2].split(" ");
+            if (p.length != length) {
+                return -1;
+            }
+            int pushes[] = new int[length];
+            for (int i = 0; i < length; i++) {
+                pushes[i] = Integer.parseInt(p[i]);
+            }
+            String states[] = fields[1].split(" ");
+            long keys[] = new long[states.length];
+            int from[] = new int[states.length];
+            for (int i = 0; i < states.length; i++) {
+                int colon = states[i].indexOf(':');
+                from[i] = Integer.parseInt(states[i].substring(0, colon));
+                keys[i] = Long.parseUnsignedLong(states[i].substring(colon + 1), 16);
+                if (from[i] < 0 || from[i] > length) {
+                    return -1;
+                }
+            }
+            synchronized (cache) {
+                for (int i = 0; i < states.length; i++) {
+                    cache.put(keys[i], new Suffix(pushes, from[i]));
+                }
+            }
+            return states.length;
+        } catch (RuntimeException e) { // NumberFormatException o falta el ':'
+            return -1;
+        }
+    }
+
+    /**
+     * Guarda la caché en el archivo, sustituyéndolo de una vez al terminar. Cada solución se escribe
+     * una sola vez, con los estados que siguen en la caché.
+     */
+    public synchronized void save() throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null) {
+            dir.mkdirs();
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8"));
+        try {
+            // agrupa los estados por solución, en el orden en que aparece en la caché cada una
+            Map<int[], List<Map.Entry<Long, Suffix>>> solutions = new IdentityHashMap<int[], List<Map.Entry<Long, Suffix>>>();
+            List<int[]> order = new ArrayList<int[]>();
+            synchronized (cache) {
+                for (Map.Entry<Long, Suffix> me : cache.entrySet()) {
+                    int pushes[] = me.getValue().pushes;
+                    List<Map.Entry<Long, Suffix>> states = solutions.get(pushes);
+                    if (states == null) {
+                        states = new ArrayList<Map.Entry<Long, Suffix>>();
+                        solutions.put(pushes, states);
+                        order.add(pushes);
+                    }
+                    states.add(me);
+                }
+            }
+            for (int pushes[] : order) {
+                if (pushes.length == 0) {
+                    continue; // estados sin solución, no se guardan
+                }
+                List<Map.Entry<Long, Suffix>> states = solutions.get(pushes);
+                long keys[] = new long[states.size()];
+                int from[] = new int[states.size()];
+                for (int i = 0; i < keys.length; i++) {
+                    keys[i] = states.get(i).getKey();
+                    from[i] = states.get(i).getValue().from;
+                }
+                write(out, pushes, keys, from, keys.length);
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                throw new IOException("No se puede sustituir " + file);
+            }
+        }
+    }
+
+    /**
+     * @return Número de estados en la caché
+     */
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * @return Consultas respondidas desde la caché
+     */
+    public long hits() {
+        return hits.get();
+    }
+
+    /**
+     * @return Consultas que no estaban en la caché
+     */
+    public long misses() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        long h = hits.get(), m = misses.get();
+        return "hints: size=" + size() + " hits=" + h + " misses=" + m
+                + " hitRate=" + (h + m == 0 ? 0 : h * 100 / (h + m)) + "%"
+                + " solves=" + solves.get() + " solveTime=" + solveMillis.get() + "ms";
+    }
+}
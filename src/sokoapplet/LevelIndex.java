@@ -0,0 +1,350 @@
+package sokoapplet;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Índice de niveles por su huella canónica, para encontrar niveles repetidos entre packs.
+ * <br/>
+ * <a href="../../src/sokoapplet/LevelIndex.java">[Pulse aquí para ver el código fuente]</a>
+ * <hr/>
+ * La huella (fingerprint()) es un hash de 64 bits que no cambia si el nivel se gira o se refleja, si
+ * tiene más o menos espacio o muros alrededor, o si el jugador empieza en otra casilla de la misma zona.
+ * Para ello el nivel se recorta a la región a la que puede llegar el jugador (las casillas que no son muro
+ * conectadas con él), se calcula el hash de esa región en cada una de las 8 simetrías del cuadrado y
+ * se toma el menor.<br/>
+ * El índice asocia cada huella al primer nivel conocido con ella, en una StateMap, por lo que comprobar
+ * si un nivel ya se conoce cuesta O(1). Se guarda en un archivo de texto que se lee al construirlo.
+ *
+ * <h3>Formato del archivo</h3>
+ * Una linea por nivel, separando los campos por tabuladores: huella en hexadecimal, pack, número de nivel
+ * y título.
+ *
+ * <h3>Uso</h3>
+ * <code>java sokoapplet.LevelIndex [-threads N] [-check] -index indice.txt pack...</code>
+ * <br/>Añade al índice los niveles de los packs y muestra los que ya estaban, con el nivel del que son
+ * copia. Las huellas se calculan en paralelo, por bloques de niveles que se añaden en el orden del pack.
+ * Con -check sólo se muestran los repetidos, sin modificar el archivo del índice: los niveles nuevos
+ * se añaden al índice en memoria, para detectar también las copias dentro de los packs comprobados.
+ *
+ * @author Fernando Carmona Varo
+ */
+public class LevelIndex {
+
+    /**  Huella devuelta para los niveles que no se pueden leer */
+    public static final long INVALID = 0;
+    /**  Niveles por bloque al calcular las huellas en paralelo */
+    private static final int CHUNK = 256;
+
+    /**  Posición en entries del nivel de cada huella */
+    private final StateMap ids = new StateMap();
+    /**  Niveles del índice: pack, número de nivel y título separados por tabuladores */
+    private final List<String> entries = new ArrayList<String>();
+    /**  Huella de cada nivel de entries */
+    private long fingerprints[] = new long[64];
+    /**  Archivo del índice */
+    private final File file;
+
+    /**
+     * Construye el índice, leyéndolo del archivo si existe
+     *
+     * @param file Archivo del índice
+     */
+    public LevelIndex(File file) throws IOException {
+        this.file = file;
+        if (file.exists()) {
+            load();
+        }
+    }
+
+    /**
+     * Calcula la huella canónica de un nivel
+     *
+     * @param b Tablero con el estado inicial del nivel
+     * @return Huella, igual para todas las variantes giradas, reflejadas o recortadas del nivel
+     */
+    public static long fingerprint(Board b) {
+        int size = b.XLim * b.YLim;
+        // región a la que puede llegar el jugador, empujando cajas o no
+        boolean in[] = new boolean[size];
+        int region[] = new int[size];
+        int n = 0;
+        in[b.player] = true;
+        region[n++] = b.player;
+        for (int head = 0; head < n; head++) {
+            for (int dir = 0; dir < 4; dir++) {
+                int next = b.neighbour(region[head], dir);
+                if (next >= 0 && !in[next] && (b.layout[next] & Board.L_WALL) == 0) {
+                    in[next] = true;
+                    region[n++] = next;
+                }
+            }
+        }
+        // zona en la que está el jugador sin empujar cajas
+        boolean inZone[] = new boolean[size];
+        int zone[] = new int[n];
+        int z = 0;
+        inZone[b.player] = true;
+        zone[z++] = b.player;
+        for (int head = 0; head < z; head++) {
+            for (int dir = 0; dir < 4; dir++) {
+                int next = b.neighbour(zone[head], dir);
+                if (next >= 0 && in[next] && !inZone[next] && !b.isPushable(next)) {
+                    inZone[next] = true;
+                    zone[z++] = next;
+                }
+            }
+        }
+        int x0 = b.XLim, y0 = b.YLim, x1 = -1, y1 = -1;
+        for (int i = 0; i < n; i++) {
+            int x = region[i] % b.XLim, y = region[i] / b.XLim;
+            x0 = Math.min(x0, x);
+            y0 = Math.min(y0, y);
+            x1 = Math.max(x1, x);
+            y1 = Math.max(y1, y);
+        }
+        int w = x1 - x0 + 1, h = y1 - y0 + 1;
+        long best = Long.MAX_VALUE;
+        for (int s = 0; s < 8; s++) {
+            int width = (s & 4) != 0 ? h : w, height = (s & 4) != 0 ? w : h;
+            // la suma no depende del orden en que se recorren las casillas
+            long hash = Board.mix((long) width << 48 | (long) height << 32);
+            for (int i = 0; i < n; i++) {
+                int cell = region[i];
+                int content = (b.isGoal(cell) ? 1 : 0) | (b.isPushable(cell) ? 2 : 0);
+                hash += Board.mix(((long) transform(b, cell, s, x0, y0, w, h) << 2 | content) + 1);
+            }
+            int player = Integer.MAX_VALUE;
+            for (int i = 0; i < z; i++) {
+                player = Math.min(player, transform(b, zone[i], s, x0, y0, w, h));
+            }
+            hash += Board.mix(-1L - player);
+            best = Math.min(best, hash);
+        }
+        return best == INVALID ? 1 : best; // INVALID se reserva para los niveles que no se pueden leer
+    }
+
+    /**
+     * Posición de una casilla dentro del rectángulo de la región tras aplicarle una simetría
+     *
+     * @param s Simetría: bit 0 refleja en X, bit 1 refleja en Y y bit 2 intercambia X e Y
+     * @return Posición y * ancho + x en el rectángulo transformado
+     */
+    private static int transform(Board b, int cell, int s, int x0, int y0, int w, int h) {
+        int x = cell % b.XLim - x0, y = cell / b.XLim - y0;
+        if ((s & 1) != 0) {
+            x = w - 1 - x;
+        }
+        if ((s & 2) != 0) {
+            y = h - 1 - y;
+        }
+        return (s & 4) != 0 ? x * h + y : y * w + x;
+    }
+
+    /**
+     * Calcula la huella de un nivel de un pack
+     *
+     * @return Huella, o INVALID si el nivel no se puede leer
+     */
+    static long fingerprint(LevelSource levels, int level) {
+        try {
+            return fingerprint(levels.getBoard(level));
+        } catch (RuntimeException e) {
+            return INVALID;
+        }
+    }
+
+    /**
+     * Busca el nivel conocido con una huella
+     *
+     * @param fingerprint Huella
+     * @return Pack, número de nivel y título separados por tabuladores, o null si no está en el índice
+     */
+    public String find(long fingerprint) {
+        int id = ids.get(fingerprint);
+        return id == StateMap.NONE ? null : entries.get(id);
+    }
+
+    /**
+     * Busca un nivel en el índice
+     *
+     * @param b Tablero con el estado inicial del nivel
+     * @return Pack, número de nivel y título del nivel conocido igual a él, o null si no está
+     */
+    public String find(Board b) {
+        return find(fingerprint(b));
+    }
+
+    /**
+     * Añade un nivel al índice, si no hay ya otro con la misma huella
+     *
+     * @param fingerprint Huella del nivel
+     * @param pack Nombre del pack
+     * @param level Número de nivel, desde 1
+     * @param title Título del nivel, o null
+     * @return true si se ha añadido
+     */
+    public boolean add(long fingerprint, String pack, int level, String title) {
+        if (ids.contains(fingerprint)) {
+            return false;
+        }
+        put(fingerprint, pack + '\t' + level + '\t' + (title == null ? "" : title.replace('\t', ' ')));
+        return true;
+    }
+
+    private void put(long fingerprint, String entry) {
+        if (entries.size() == fingerprints.length) {
+            fingerprints = Arrays.copyOf(fingerprints, fingerprints.length * 2);
+        }
+        fingerprints[entries.size()] = fingerprint;
+        ids.put(fingerprint, entries.size());
+        entries.add(entry);
+    }
+
+    /**
+     * @return Número de niveles del índice
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Lee el índice del archivo
+     */
+    private void load() throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            for (String line; (line = in.readLine()) != null; ) {
+                String fields[] = line.split("\t", 2);
+                if (fields.length < 2) {
+                    continue;
+                }
+                long fingerprint = Long.parseUnsignedLong(fields[0], 16);
+                if (!ids.contains(fingerprint)) {
+                    put(fingerprint, fields[1]);
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Guarda el índice en el archivo, sustituyéndolo de una vez al terminar
+     */
+    public void save() throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8"));
+        try {
+            for (int i = 0; i < entries.size(); i++) {
+                out.println(Long.toHexString(fingerprints[i]) + '\t' + entries.get(i));
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                throw new IOException("No se puede sustituir " + file);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean check = false;
+        String indexFile = null;
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("-"); i++) {
+            if (args[i].equals("-check")) {
+                check = true;
+            } else if (i + 1 < args.length && args[i].equals("-threads")) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (i + 1 < args.length && args[i].equals("-index")) {
+                indexFile = args[++i];
+            } else {
+                i = args.length;
+            }
+        }
+        if (indexFile == null || i >= args.length) {
+            System.err.println("Uso: java sokoapplet.LevelIndex [-threads N] [-check] -index indice.txt pack...");
+            System.exit(1);
+        }
+        LevelIndex index = new LevelIndex(new File(indexFile));
+        int known = index.size();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        // bloques pendientes, en el orden del pack
+        ArrayDeque<Future<long[]>> window = new ArrayDeque<Future<long[]>>();
+        long start = System.currentTimeMillis();
+        int processed = 0, added = 0, duplicates = 0, invalid = 0;
+        try {
+            for (; i < args.length; i++) {
+                final String pack = args[i];
+                final LevelSource levels = Solver.openPack(new File(pack));
+                int next = 0;
+                for (int from = 0; from < levels.size() || !window.isEmpty(); ) {
+                    // limita los bloques pendientes para no cargar todo el pack en memoria
+                    if (from < levels.size() && window.size() < 2 * threads) {
+                        final int first = from, last = Math.min(from + CHUNK, levels.size());
+                        window.add(pool.submit(new Callable<long[]>() {
+                            public long[] call() {
+                                long fp[] = new long[last - first];
+                                for (int l = first; l < last; l++) {
+                                    fp[l - first] = fingerprint(levels, l);
+                                }
+                                return fp;
+                            }
+                        }));
+                        from = last;
+                        continue;
+                    }
+                    for (long fp : window.poll().get()) {
+                        int level = next++;
+                        processed++;
+                        if (fp == INVALID) {
+                            invalid++;
+                            System.out.println(pack + ":" + (level + 1) + " no se puede leer");
+                            continue;
+                        }
+                        String original = index.find(fp);
+                        if (original == null) {
+                            index.add(fp, pack, level + 1, levels.getTitle(level));
+                            added++;
+                        } else if (!original.startsWith(pack + "\t" + (level + 1) + "\t")) {
+                            duplicates++;
+                            String k[] = original.split("\t", 3);
+                            System.out.println(pack + ":" + (level + 1) + " es copia de " + k[0] + ":" + k[1]
+                                    + (k.length > 2 && k[2].length() > 0 ? " (" + k[2] + ")" : ""));
+                        }
+                    }
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IOException("Error procesando un nivel", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        if (!check) {
+            index.save();
+        }
+        long millis = Math.max(1, System.currentTimeMillis() - start);
+        System.out.println(processed + " niveles (" + added + " nuevos, " + duplicates + " repetidos, " + invalid
+                + " no válidos) en " + millis + "ms con " + threads + " hilos (" + (processed * 1000L / millis)
+                + " niveles/s), " + (check ? known : index.size()) + " niveles en " + indexFile);
+    }
+}
@@ -0,0 +1,299 @@
+package sokoapplet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Pack de niveles (levelset) cargado desde un archivo de texto.
+ * <br/>
+ * <a href="../../src/sokoapplet/LevelPack.java">[Pulse aquí para ver el código fuente]</a>
+ * <hr/>
+ * El archivo se lee una única vez, por bloques, y según se va leyendo se construye un índice con la
+ * posición de cada nivel dentro del texto y sus datos (título y comentario). El tablero de cada nivel
+ * no se interpreta hasta que se pide con getBoard(), y el acceso a cualquier nivel por su número es
+ * directo, de forma que abrir packs con miles de niveles es rápido y ocupa poco más que el propio archivo.
+ *
+ * <h3>Formato de los packs</h3>
+ * Se consideran filas de un nivel las lineas que contienen algún muro y sólo caracteres de tablero.
+ * El nivel acaba en la primera linea que no es una fila (o al final del archivo).<br/>
+ * Las lineas anteriores a cada nivel se usan para obtener sus datos: el título es el texto entre comillas
+ * simples (como en 'Push down (01)') o en su defecto una linea del tipo "Level 1" o "Title: ...", y el
+ * comentario es el texto tras el ';' en la linea del título, o la última linea de comentario (';').
+ *
+ * @author Fernando Carmona Varo
+ */
+public class LevelPack implements LevelSource {
+
+    /**  Codificación de los archivos de niveles */
+    static final String CHARSET = "ISO-8859-1";
+    /**  Caracteres que pueden formar parte de una fila de un nivel */
+    static final String BOARD_CHARS = " #@+$*.-_\t";
+
+    /**  Contenido del archivo */
+    private byte data[];
+    /**  Bytes leídos del archivo */
+    private int length;
+    /**  Número de niveles encontrados */
+    private int count;
+    /**  Inicio y fin de cada nivel dentro de data */
+    private int start[] = new int[16], end[] = new int[16];
+    /**  Título y comentario de cada nivel (null si no tiene) */
+    private String titles[] = new String[16], comments[] = new String[16];
+
+    /* Estado del indexado mientras se lee el archivo */
+    private int levelStart = -1;
+    private String title, comment, blockComment;
+
+    /**
+     * Construye el pack de niveles a partir de un texto ya cargado
+     *
+     * @param text Contenido en formato texto del pack de niveles
+     */
+    public LevelPack(String text) {
+        try {
+            data = text.getBytes(CHARSET);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        length = data.length;
+        index(0, length, true);
+    }
+
+    /**
+     * Construcción interna, para cargar desde un stream
+     */
+    private LevelPack() {
+        data = new byte[8192];
+    }
+
+    /**
+     * Carga un pack de niveles leyéndolo de un stream, que no se cierra.
+     *
+     * @param in Stream con el pack de niveles en formato texto
+     * @return El pack de niveles cargado
+     * @throws IOException si falla la lectura
+     */
+    public static LevelPack load(InputStream in) throws IOException {
+        LevelPack pack = new LevelPack();
+        int indexed = 0;
+        for (int n; (n = in.read(pack.data, pack.length, pack.data.length - pack.length)) >= 0; ) {
+            pack.length += n;
+            indexed = pack.index(indexed, pack.length, false);
+            if (pack.length == pack.data.length) {
+                byte aux[] = new byte[pack.data.length * 2];
+                System.arraycopy(pack.data, 0, aux, 0, pack.length);
+                pack.data = aux;
+            }
+        }
+        pack.index(indexed, pack.length, true);
+        return pack;
+    }
+
+    /**
+     * Indexa las lineas completas del texto entre las posiciones dadas
+     *
+     * @param from Inicio de la primera linea sin indexar
+     * @param to Fin de los datos disponibles
+     * @param eof Si se ha llegado al final del archivo, en cuyo caso también se indexa la última linea
+     * @return Posición de inicio de la primera linea que queda sin indexar
+     */
+    private int index(int from, int to, boolean eof) {
+        int line = from;
+        for (int i = from; i < to; i++) {
+            if (data[i] == '\n') {
+                line(line, i);
+                line = i + 1;
+            }
+        }
+        if (eof) {
+            if (line < to) {
+                line(line, to);
+                line = to;
+            }
+            closeLevel(to);
+        }
+        return line;
+    }
+
+    /**
+     * Procesa una linea del archivo
+     *
+     * @param from Inicio de la linea
+     * @param to Fin de la linea (sin incluir el salto de linea)
+     */
+    private void line(int from, int to) {
+        if (to > from && data[to - 1] == '\r') {
+            to--;
+        }
+        if (isBoardLine(from, to)) {
+            if (levelStart < 0) {
+                levelStart = from;
+            }
+            return;
+        }
+        closeLevel(from);
+        // lineas de datos entre niveles
+        int i = from;
+        while (i < to && data[i] == ' ') {
+            i++;
+        }
+        if (i == to) {
+            return;
+        }
+        if (data[i] == ';') {
+            blockComment = text(i + 1, to);
+        } else if (data[i] == '\'') {
+            int close = i + 1;
+            while (close < to && data[close] != '\'') {
+                close++;
+            }
+            title = text(i + 1, close);
+            comment = null;
+            for (int j = close; j < to; j++) {
+                if (data[j] == ';') {
+                    comment = text(j + 1, to);
+                    break;
+                }
+            }
+        } else if (startsWith(i, to, "Title:")) {
+            title = text(i + 6, to);
+        } else if (startsWith(i, to, "Level") && title == null) {
+            title = text(i, to);
+        }
+    }
+
+    /**
+     * Cierra el nivel que se estuviese leyendo, añadiéndolo al índice
+     *
+     * @param at Posición en la que acaba el nivel
+     */
+    private void closeLevel(int at) {
+        if (levelStart < 0) {
+            return;
+        }
+        if (count == start.length) {
+            start = grow(start);
+            end = grow(end);
+            String aux[] = new String[count * 2];
+            System.arraycopy(titles, 0, aux, 0, count);
+            titles = aux;
+            aux = new String[count * 2];
+            System.arraycopy(comments, 0, aux, 0, count);
+            comments = aux;
+        }
+        start[count] = levelStart;
+        end[count] = at;
+        titles[count] = title;
+        comments[count] = comment != null ? comment : blockComment;
+        count++;
+        levelStart = -1;
+        title = comment = blockComment = null;
+    }
+
+    /**
+     * Comprueba si la linea es una fila de un nivel: contiene algún muro y sólo caracteres de tablero
+     */
+    private boolean isBoardLine(int from, int to) {
+        boolean wall = false;
+        for (int i = from; i < to; i++) {
+            char c = (char) (data[i] & 0xff);
+            if (c == Board.WALL) {
+                wall = true;
+            } else if (BOARD_CHARS.indexOf(c) < 0) {
+                return false;
+            }
+        }
+        return wall;
+    }
+
+    private boolean startsWith(int from, int to, String prefix) {
+        if (to - from < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (data[from + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String text(int from, int to) {
+        try {
+            return new String(data, from, Math.max(0, to - from), CHARSET).trim();
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int[] grow(int a[]) {
+        int aux[] = new int[a.length * 2];
+        System.arraycopy(a, 0, aux, 0, a.length);
+        return aux;
+    }
+
+    /**
+     * @return Número de niveles del pack
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Devuelve el título del nivel dado
+     *
+     * @param level Número de nivel, desde 0
+     * @return Título del nivel, o null si no tiene
+     */
+    public String getTitle(int level) {
+        check(level);
+        return titles[level];
+    }
+
+    /**
+     * Devuelve el comentario del nivel dado
+     *
+     * @param level Número de nivel, desde 0
+     * @return Comentario del nivel, o null si no tiene
+     */
+    public String getComment(int level) {
+        check(level);
+        return comments[level];
+    }
+
+    /**
+     * Devuelve el texto del tablero del nivel dado, una linea por fila
+     *
+     * @param level Número de nivel, desde 0
+     * @return Texto del nivel en el formato de Board(String)
+     */
+    public String getText(int level) {
+        check(level);
+        return raw(start[level], end[level]);
+    }
+
+    /**
+     * Construye un tablero con el estado inicial del nivel dado
+     *
+     * @param level Número de nivel, desde 0
+     * @return Tablero nuevo del nivel
+     */
+    public Board getBoard(int level) {
+        return new Board(getText(level));
+    }
+
+    private String raw(int from, int to) {
+        try {
+            return new String(data, from, to - from, CHARSET);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void check(int level) {
+        if (level < 0 || level >= count) {
+            throw new IndexOutOfBoundsException("Nivel " + level + " de " + count);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package sokoapplet;
+
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Prepara en segundo plano los niveles que probablemente se jueguen a continuación, para que cambiar
+ * de nivel sea inmediato.
+ * <br/>
+ * <a href="../../src/sokoapplet/LevelPrefetcher.java">[Pulse aquí para ver el código fuente]</a>
+ * <hr/>
+ * De cada nivel se prepara, en un hilo aparte, el tablero inicial (leído del pack), la tabla de
+ * distancias de su cota inferior de empujes (ver Board.pushLowerBound()) y la imagen de su capa
+ * estática con el tema actual (ver BoardRenderer.background()). Al jugar un nivel se piden el
+ * siguiente y el anterior con prefetch(), y al cambiar de nivel o reiniciar get() devuelve el nivel
+ * ya preparado, o espera a que termine si se está preparando.<br/>
+ * Los niveles preparados se guardan en una caché de tamaño máximo que descarta los usados hace más
+ * tiempo (LRU). El tablero guardado no se juega nunca: cada partida es una copia suya (Board.fork()),
+ * que comparte con él la capa estática y las distancias, por lo que reiniciar un nivel tampoco
+ * vuelve a leerlo.
+ *
+ * @author Fernando Carmona Varo
+ */
+public class LevelPrefetcher {
+
+    /**
+     * Nivel preparado: tablero inicial y capa estática dibujada con un tema
+     */
+    public static final class Level {
+        private final Board board;
+        private final Theme theme;
+        private final BufferedImage background;
+
+        Level(Board board, Theme theme, BufferedImage background) {
+            this.board = board;
+            this.theme = theme;
+            this.background = background;
+        }
+
+        /**
+         * @return Tablero nuevo con el estado inicial del nivel
+         */
+        public Board newBoard() {
+            return board.fork();
+        }
+
+        /**
+         * @param current Tema en uso
+         * @return Capa estática del nivel si se dibujó con ese tema, o null
+         */
+        public BufferedImage getBackground(Theme current) {
+            return current == theme ? background : null;
+        }
+    }
+
+    /**  Niveles del pack */
+    private final LevelSource levels;
+    /**  Niveles preparados o preparándose, en orden de uso */
+    private final LinkedHashMap<Integer, Future<Level>> cache;
+    /**  Hilo en el que se preparan los niveles */
+    private final ExecutorService worker;
+    /**  Niveles pedidos que ya estaban preparados, y que hubo que preparar al pedirlos */
+    private int hits, misses;
+
+    /**
+     * Construye el prefetcher
+     *
+     * @param levels Niveles del pack
+     * @param capacity Número máximo de niveles preparados que se guardan
+     */
+    public LevelPrefetcher(LevelSource levels, final int capacity) {
+        this.levels = levels;
+        this.cache = new LinkedHashMap<Integer, Future<Level>>(16, 0.75f, true) {
+            static final long serialVersionUID = 0;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Future<Level>> eldest) {
+                return size() > capacity;
+            }
+        };
+        this.worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "level-prefetcher");
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Pide que se preparen en segundo plano los niveles dados, si existen y no están ya en la caché
+     * con el tema dado
+     *
+     * @param theme Tema con el que dibujar su capa estática
+     * @param level Números de nivel, desde 0
+     */
+    public synchronized void prefetch(Theme theme, int... level) {
+        for (int l : level) {
+            if (l >= 0 && l < levels.size() && !cached(l, theme)) {
+                FutureTask<Level> task = task(l, theme);
+                cache.put(l, task);
+                worker.execute(task);
+            }
+        }
+    }
+
+    /**
+     * Devuelve un nivel preparado, preparándolo en el momento si no está en la caché
+     *
+     * @param level Número de nivel, desde 0
+     * @param theme Tema en uso, para dibujar la capa estática si no está preparada
+     * @return Nivel preparado
+     */
+    public Level get(int level, Theme theme) {
+        FutureTask<Level> task = null;
+        Future<Level> f;
+        synchronized (this) {
+            f = cache.get(level);
+            if (f == null) {
+                misses++;
+                f = task = task(level, theme);
+                cache.put(level, task);
+            } else {
+                hits++;
+            }
+        }
+        if (task != null) {
+            task.run(); // en este hilo, para no esperar detrás de otros niveles
+        }
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            synchronized (this) {
+                cache.remove(level);
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+        }
+        return new Level(levels.getBoard(level), theme, null);
+    }
+
+    /**
+     * Comprueba si un nivel está en la caché y, si ya está preparado, si su capa estática se dibujó con el tema dado
+     */
+    private boolean cached(int level, Theme theme) {
+        Future<Level> f = cache.get(level);
+        if (f == null) {
+            return false;
+        }
+        if (!f.isDone()) {
+            return true;
+        }
+        try {
+            return f.get().getBackground(theme) != null || !theme.isLoaded();
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private FutureTask<Level> task(final int level, final Theme theme) {
+        return new FutureTask<Level>(new Callable<Level>() {
+            public Level call() {
+                Board b = levels.getBoard(level);
+                b.pushLowerBound(); // calcula la tabla de distancias, que comparten sus copias
+                return new Level(b, theme, BoardRenderer.background(b, theme));
+            }
+        });
+    }
+
+    /**
+     * Descarta los niveles preparados y para el hilo
+     */
+    public synchronized void close() {
+        cache.clear();
+        worker.shutdownNow();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "prefetch: size=" + cache.size() + " hits=" + hits + " misses=" + misses;
+    }
+}
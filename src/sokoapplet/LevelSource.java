@@ -0,0 +1,38 @@
+package sokoapplet;
+
+/**
+ * Conjunto de niveles numerados del que se pueden obtener tableros, sea cual sea su formato.
+ * <br/>
+ * <a href="../../src/sokoapplet/LevelSource.java">[Pulse aquí para ver el código fuente]</a>
+ * <hr/>
+ * Lo implementan LevelPack (packs en formato texto) y BinaryLevelPack (packs precompilados).
+ *
+ * @author Fernando Carmona Varo
+ */
+public interface LevelSource {
+
+    /**
+     * @return Número de niveles
+     */
+    int size();
+
+    /**
+     * @param level Número de nivel, desde 0
+     * @return Título del nivel, o null si no tiene
+     */
+    String getTitle(int level);
+
+    /**
+     * @param level Número de nivel, desde 0
+     * @return Comentario del nivel, o null si no tiene
+     */
+    String getComment(int level);
+
+    /**
+     * Construye un tablero con el estado inicial del nivel dado
+     *
+     * @param level Número de nivel, desde 0
+     * @return Tablero nuevo del nivel
+     */
+    Board getBoard(int level);
+}
@@ -0,0 +1,232 @@
+package sokoapplet;
+
+import java.util.Arrays;
+
+/**
+ * Cota inferior del número de empujes que faltan para resolver un tablero (ver Board.pushLowerBound()).
+ * <br/>
+ * <a href="../../src/sokoapplet/LowerBound.java">[Pulse aquí para ver el código fuente]</a>
+ * <hr/>
+ * Al crearse se calcula, para cada meta, el mínimo número de empujes que necesita una caja para llegar
+ * a ella desde cada casilla sin tener en cuenta el resto de cajas. La cota es el coste de la asignación
+ * de cajas a metas (una meta distinta para cada caja) que minimiza la suma de esas distancias, que se
+ * resuelve con el algoritmo húngaro. Nunca supera el número real de empujes necesarios.<br/>
+ * Si hay más metas que cajas se añaden cajas ficticias, con coste 0 a cualquier meta, para que la
+ * asignación sea cuadrada y al reasignar una caja no haya que tener en cuenta las metas libres.<br/>
+ * La asignación se mantiene entre consultas: en cada consulta sólo se vuelven a asignar las cajas que
+ * se han movido desde la anterior, con un camino de aumento del algoritmo húngaro cada una (coste
+ * O(metas²)), en lugar de repetir toda la asignación (O(metas³)). Tras un empuje o un
+ * movimiento deshecho sólo ha cambiado una caja.<br/>
+ * La tabla de distancias sólo depende de la capa estática del nivel, por lo que se comparte con las
+ * copias del tablero (ver Board.fork()).
+ *
+ * @author Fernando Carmona Varo
+ */
+public class LowerBound {
+
+    /**  Cota devuelta cuando alguna caja no puede llegar a ninguna meta libre */
+    public static final int INF = Integer.MAX_VALUE;
+    /**  Coste de asignar una caja a una meta a la que no puede llegar */
+    private static final int UNREACHABLE = 1 << 20;
+
+    /**  Tablero del que se calcula la cota */
+    private final Board board;
+    /**  Número de cajas y de metas */
+    private final int n, m;
+    /**  Distancia en empujes desde cada casilla a cada meta, indexada por meta * casillas + casilla */
+    private final int dist[];
+    /**  Casilla de cada caja en la última consulta, o -1 si hay que asignarla */
+    private final int cells[];
+    /* Algoritmo húngaro, con filas (cajas) y columnas (metas) desde 1: potenciales de filas y columnas,
+       fila asignada a cada columna (0 si ninguna), columna asignada a cada fila y arrays auxiliares */
+    private final long u[], v[], minv[];
+    private final int p[], col[], way[];
+    private final boolean used[];
+    /**  Si ya se han asignado las cajas ficticias */
+    private boolean started;
+
+    /**
+     * Crea la cota de un tablero, calculando la tabla de distancias
+     *
+     * @param board Tablero
+     */
+    LowerBound(Board board) {
+        this(board, distances(board));
+    }
+
+    private LowerBound(Board board, int dist[]) {
+        this.board = board;
+        this.dist = dist;
+        n = board.boxes.length;
+        m = dist.length / board.layout.length;
+        cells = new int[n];
+        Arrays.fill(cells, -1);
+        u = new long[m + 1];
+        v = new long[m + 1];
+        p = new int[m + 1];
+        col = new int[m + 1];
+        way = new int[m + 1];
+        minv = new long[m + 1];
+        used = new boolean[m + 1];
+    }
+
+    /**
+     * Crea la cota de otro tablero del mismo nivel, compartiendo la tabla de distancias
+     *
+     * @param other Copia del tablero (ver Board.fork())
+     * @return Cota del tablero dado
+     */
+    LowerBound fork(Board other) {
+        return new LowerBound(other, dist);
+    }
+
+    /**
+     * Calcula la distancia en empujes desde cada casilla a cada meta
+     */
+    private static int[] distances(Board board) {
+        int size = board.layout.length, goals = 0;
+        for (int i = 0; i < size; i++) {
+            if (board.isGoal(i)) {
+                goals++;
+            }
+        }
+        int dist[] = new int[goals * size];
+        int queue[] = new int[size];
+        int row[] = new int[size];
+        for (int i = 0, g = 0; i < size; i++) {
+            if (board.isGoal(i)) {
+                pull(board, new int[] { i }, row, queue);
+                System.arraycopy(row, 0, dist, g++ * size, size);
+            }
+        }
+        return dist;
+    }
+
+    /**
+     * Calcula el mínimo número de empujes necesarios para llevar una caja desde cada casilla hasta
+     * alguna de las casillas dadas, sin tener en cuenta el resto de cajas. Para ello se "tira" de
+     * la caja hacia atrás desde todas ellas a la vez.
+     *
+     * @param board Tablero del nivel
+     * @param targets Casillas de destino
+     * @param dist Distancia de cada casilla, INF si desde ella no se puede llegar a ningún destino
+     * @param queue Array auxiliar del tamaño del tablero
+     */
+    static void pull(Board board, int targets[], int dist[], int queue[]) {
+        int head = 0, tail = 0;
+        Arrays.fill(dist, INF);
+        for (int t : targets) {
+            dist[t] = 0;
+            queue[tail++] = t;
+        }
+        while (head < tail) {
+            int cell = queue[head++];
+            for (int dir = 0; dir < 4; dir++) {
+                // la caja pasa de cell a prev y el jugador queda en pl
+                int prev = board.neighbour(cell, dir);
+                if (prev < 0 || dist[prev] != INF || board.layout[prev] == Board.L_WALL) {
+                    continue;
+                }
+                int pl = board.neighbour(prev, dir);
+                if (pl < 0 || board.layout[pl] == Board.L_WALL) {
+                    continue;
+                }
+                dist[prev] = dist[cell] + 1;
+                queue[tail++] = prev;
+            }
+        }
+    }
+
+    /**
+     * Coste de asignar la caja de la fila i a la meta de la columna j
+     */
+    private int cost(int i, int j) {
+        if (i > n) {
+            return 0; // caja ficticia
+        }
+        int d = dist[(j - 1) * board.layout.length + cells[i - 1]];
+        return d == INF ? UNREACHABLE : d;
+    }
+
+    /**
+     * Devuelve la cota para el estado actual del tablero, reasignando sólo las cajas que se han
+     * movido desde la última consulta
+     *
+     * @return Mínimo número de empujes para resolver el tablero, o INF si alguna caja no puede
+     *          llegar a una meta libre
+     */
+    public int get() {
+        if (n > m) {
+            return INF;
+        }
+        if (!started) {
+            started = true;
+            for (int i = n + 1; i <= m; i++) {
+                augment(i);
+            }
+        }
+        for (int i = 1; i <= n; i++) {
+            int cell = board.boxes[i - 1];
+            if (cells[i - 1] != cell) {
+                cells[i - 1] = cell;
+                if (col[i] != 0) {
+                    p[col[i]] = 0;
+                    col[i] = 0;
+                }
+                // como v <= 0 y los costes son >= 0, la fila vuelve a ser factible con u = 0,
+                // y al ser la asignación cuadrada basta un camino de aumento para que vuelva a ser óptima
+                u[i] = 0;
+                augment(i);
+            }
+        }
+        long total = 0;
+        for (int i = 1; i <= n; i++) {
+            total += cost(i, col[i]);
+        }
+        return total >= UNREACHABLE ? INF : (int) total;
+    }
+
+    /**
+     * Asigna una meta a la caja de la fila i0 con un camino de aumento de coste mínimo, actualizando
+     * los potenciales para mantener la asignación óptima
+     */
+    private void augment(int i0) {
+        p[0] = i0;
+        int j0 = 0;
+        Arrays.fill(minv, Long.MAX_VALUE);
+        Arrays.fill(used, false);
+        do {
+            used[j0] = true;
+            int i = p[j0], j1 = 0;
+            long delta = Long.MAX_VALUE;
+            for (int j = 1; j <= m; j++) {
+                if (!used[j]) {
+                    long cur = cost(i, j) - u[i] - v[j];
+                    if (cur < minv[j]) {
+                        minv[j] = cur;
+                        way[j] = j0;
+                    }
+                    if (minv[j] < delta) {
+                        delta = minv[j];
+                        j1 = j;
+                    }
+                }
+            }
+            for (int j = 0; j <= m; j++) {
+                if (used[j]) {
+                    u[p[j]] += delta;
+                    v[j] -= delta;
+                } else {
+                    minv[j] -= delta;
+                }
+            }
+            j0 = j1;
+        } while (p[j0] != 0);
+        do {
+            int j1 = way[j0];
+            p[j0] = p[j1];
+            col[p[j0]] = j0;
+            j0 = j1;
+        } while (j0 != 0);
+    }
+}
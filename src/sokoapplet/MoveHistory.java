@@ -0,0 +1,275 @@
+package sokoapplet;
+
+import java.util.Arrays;
+
+/**
+ * Historial de movimientos del jugador sobre un tablero.
+ * <br/>
+ * <a href="../../src/sokoapplet/MoveHistory.java">[Pulse aquí para ver el código fuente]</a>
+ * <hr/>
+ * Cada movimiento se codifica en un único byte: los dos bits bajos guardan la dirección en orden LURD
+ * (0 izquierda, 1 arriba, 2 derecha, 3 abajo) y el bit PUSH indica si el movimiento empujó una caja.
+ * Los movimientos se guardan en un array que crece cuando hace falta, de forma que añadir, deshacer y
+ * rehacer un movimiento no reserva memoria.
+ *
+ * <h3>Deshacer y rehacer</h3>
+ * Al deshacer, los movimientos no se borran sino que quedan tras la posición actual del historial hasta
+ * que se realiza un movimiento nuevo, por lo que pueden volver a hacerse.
+ *
+ * <h3>Formato LURD</h3>
+ * Es el formato estándar para compartir soluciones: una letra por movimiento (l, u, r, d), en mayúscula
+ * si el movimiento empuja una caja.
+ *
+ * @author Fernando Carmona Varo
+ */
+public class MoveHistory {
+
+    /**  Marca de un movimiento que empuja una caja */
+    public static final int PUSH = 4;
+    /**  Máscara de la dirección de un movimiento */
+    public static final int DIR = 3;
+    /**  Letras del formato LURD para cada dirección */
+    static final String LURD = "lurd";
+
+    /**  Movimientos codificados */
+    private byte moves[];
+    /**  Número de movimientos realizados, y de empujes entre ellos */
+    private int size, pushes;
+    /**  Número de movimientos guardados, incluyendo los que se pueden rehacer */
+    private int limit;
+    /**  Versión del historial, que cambia cada vez que se sobreescriben o descartan movimientos guardados */
+    private int version;
+    /* Cambios de versión: versión nueva y primer movimiento sobreescrito en cada uno. Sólo se conservan
+       los que no tienen otro posterior que empiece antes, por lo que ambos arrays quedan ordenados */
+    private int editVersion[] = new int[8], editFrom[] = new int[8];
+    private int edits;
+
+    /**
+     * Construye un historial vacío
+     */
+    public MoveHistory() {
+        moves = new byte[64];
+    }
+
+    /**
+     * Añade un movimiento al historial, descartando los movimientos que se pudieran rehacer
+     *
+     * @param code Movimiento codificado (dirección y marca PUSH)
+     */
+    public void add(int code) {
+        if (size == moves.length) {
+            byte aux[] = new byte[moves.length * 2];
+            System.arraycopy(moves, 0, aux, 0, size);
+            moves = aux;
+        }
+        if (size < limit) {
+            edited(size);
+        }
+        moves[size++] = (byte) code;
+        limit = size;
+        pushes += (code & PUSH) / PUSH;
+    }
+
+    /**
+     * Retira el último movimiento realizado, que queda disponible para rehacerse
+     *
+     * @return Movimiento retirado, o -1 si el historial está vacío
+     */
+    public int undo() {
+        if (size == 0) {
+            return -1;
+        }
+        pushes -= (moves[--size] & PUSH) / PUSH;
+        return moves[size];
+    }
+
+    /**
+     * Devuelve el siguiente movimiento que se puede rehacer, sin rehacerlo
+     *
+     * @return Movimiento a rehacer, o -1 si no queda ninguno
+     */
+    public int peekRedo() {
+        if (size == limit) {
+            return -1;
+        }
+        return moves[size];
+    }
+
+    /**
+     * Vuelve a dar por realizado el siguiente movimiento deshecho
+     *
+     * @return Movimiento rehecho, o -1 si no queda ninguno
+     */
+    public int redo() {
+        if (size == limit) {
+            return -1;
+        }
+        pushes += (moves[size] & PUSH) / PUSH;
+        return moves[size++];
+    }
+
+    /**
+     * Devuelve el movimiento guardado en la posición dada
+     *
+     * @param i Posición del movimiento, desde 0 (primer movimiento)
+     * @return Movimiento codificado
+     */
+    public int get(int i) {
+        if (i < 0 || i >= limit) {
+            throw new IndexOutOfBoundsException("movimiento " + i);
+        }
+        return moves[i];
+    }
+
+    /**
+     * @return Número de movimientos realizados
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Número de movimientos que pueden rehacerse
+     */
+    public int redoSize() {
+        return limit - size;
+    }
+
+    /**
+     * @return Número de empujes entre los movimientos realizados
+     */
+    public int pushes() {
+        return pushes;
+    }
+
+    /**
+     * Vacía el historial
+     */
+    public void clear() {
+        size = limit = pushes = 0;
+        edited(0);
+    }
+
+    /**
+     * Cambia de versión al sobreescribirse los movimientos guardados a partir de uno dado
+     */
+    private void edited(int from) {
+        version++;
+        while (edits > 0 && editFrom[edits - 1] >= from) {
+            edits--;
+        }
+        if (edits == editFrom.length) {
+            editVersion = Arrays.copyOf(editVersion, edits * 2);
+            editFrom = Arrays.copyOf(editFrom, edits * 2);
+        }
+        editVersion[edits] = version;
+        editFrom[edits++] = from;
+    }
+
+    /**
+     * Devuelve la versión del historial. Mientras no cambie, los movimientos guardados hasta ese
+     * momento siguen siendo los mismos (sólo se han podido añadir movimientos nuevos al final).
+     *
+     * @return Versión del historial
+     */
+    int version() {
+        return version;
+    }
+
+    /**
+     * Devuelve cuántos de los primeros movimientos guardados siguen siendo los mismos que en una
+     * versión anterior del historial
+     *
+     * @param since Versión anterior (ver version())
+     * @return Número de movimientos sin cambios desde esa versión, Integer.MAX_VALUE si no ha cambiado
+     */
+    int unchanged(int since) {
+        for (int i = 0; i < edits; i++) {
+            if (editVersion[i] > since) {
+                return editFrom[i];
+            }
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Cambia el número de movimientos realizados, dejando el resto de los guardados para rehacerse.
+     * Coste O(1): el número de empujes hasta ese punto lo da quien lo guardó.
+     *
+     * @param n Número de movimientos realizados, como mucho los guardados
+     * @param pushes Número de empujes entre los n primeros movimientos
+     */
+    void seek(int n, int pushes) {
+        if (n < 0 || n > limit) {
+            throw new IndexOutOfBoundsException("movimiento " + n);
+        }
+        size = n;
+        this.pushes = pushes;
+    }
+
+    /**
+     * Devuelve los movimientos realizados en formato LURD
+     *
+     * @return Cadena con una letra por movimiento
+     */
+    public String toLurd() {
+        StringBuilder sb = new StringBuilder(size);
+        for (int i = 0; i < size; i++) {
+            sb.append(toChar(moves[i]));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Carga en el historial una secuencia de movimientos en formato LURD. El historial queda vacío
+     * y todos los movimientos cargados quedan pendientes de rehacerse, de forma que puedan
+     * reproducirse sobre el tablero con sucesivas llamadas a Board.redoMove().
+     *
+     * @param lurd Secuencia de movimientos, se ignoran los espacios y saltos de linea
+     * @throws IllegalArgumentException si la secuencia contiene un caracter que no es un movimiento. En
+     *          ese caso el historial no se modifica
+     */
+    public void loadLurd(CharSequence lurd) {
+        // se comprueba toda la secuencia antes de tocar el historial
+        for (int i = 0; i < lurd.length(); i++) {
+            char c = lurd.charAt(i);
+            if (!Character.isWhitespace(c) && fromChar(c) < 0) {
+                throw new IllegalArgumentException("Movimiento no válido '" + c + "' en la posición " + i);
+            }
+        }
+        clear();
+        for (int i = 0; i < lurd.length(); i++) {
+            char c = lurd.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                add(fromChar(c));
+            }
+        }
+        size = pushes = 0;
+    }
+
+    /**
+     * Convierte un movimiento codificado a su letra del formato LURD
+     *
+     * @param code Movimiento codificado
+     * @return Letra del movimiento, en mayúscula si es un empuje
+     */
+    public static char toChar(int code) {
+        char c = LURD.charAt(code & DIR);
+        return (code & PUSH) != 0 ? Character.toUpperCase(c) : c;
+    }
+
+    /**
+     * Convierte una letra del formato LURD a un movimiento codificado
+     *
+     * @param c Letra del movimiento
+     * @return Movimiento codificado, o -1 si no es una letra válida
+     */
+    public static int fromChar(char c) {
+        int dir = LURD.indexOf(c);
+        if (dir >= 0) {
+            return dir;
+        }
+        dir = LURD.indexOf(Character.toLowerCase(c));
+        return dir < 0 ? -1 : dir | PUSH;
+    }
+}
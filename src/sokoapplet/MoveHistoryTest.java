@@ -0,0 +1,81 @@
+package sokoapplet;
+
+/**
+ * Pruebas de la carga de partidas en formato LURD de MoveHistory.
+ * <br/>
+ * <a href="../../src/sokoapplet/MoveHistoryTest.java">[Pulse aquí para ver el código fuente]</a>
+ * <hr/>
+ * Comprueba que una secuencia válida queda pendiente de rehacerse y se reproduce sobre el tablero, y que
+ * una secuencia con un caracter no válido deja el historial y el tablero como estaban. Termina con código
+ * de error si alguna comprobación falla.
+ *
+ * <h3>Uso</h3>
+ * <code>java sokoapplet.MoveHistoryTest</code>
+ *
+ * @author Fernando Carmona Varo
+ */
+public class MoveHistoryTest {
+
+    static final String LEVEL =
+              "#######\n"
+            + "#@ $ .#\n"
+            + "#######\n";
+
+    private static int failures;
+
+    public static void main(String[] args) {
+        loadValid();
+        loadMalformed();
+        if (failures > 0) {
+            System.out.println(failures + " comprobaciones fallidas");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    /**
+     * Una solución válida queda entera para rehacerse y resuelve el nivel
+     */
+    private static void loadValid() {
+        Board board = new Board(LEVEL);
+        MoveHistory h = board.getHistory();
+        h.loadLurd("rR\nR");
+        check("valida: movimientos", h.size() == 0 && h.redoSize() == 3 && h.pushes() == 0);
+        while (board.redoMove()) {
+            // reproduce la solución
+        }
+        check("valida: resuelto", board.hasWon() && h.pushes() == 2 && h.toLurd().equals("rRR"));
+    }
+
+    /**
+     * Una secuencia con un caracter no válido se rechaza sin tocar el historial, y deshacer y rehacer
+     * siguen funcionando sobre la partida que había
+     */
+    private static void loadMalformed() {
+        Board board = new Board(LEVEL);
+        MoveHistory h = board.getHistory();
+        board.movePlayer(1, 0);
+        board.movePlayer(1, 0);
+        board.undoMove();
+        int version = h.version();
+        try {
+            h.loadLurd("rRx");
+            check("no valida: excepción", false);
+        } catch (IllegalArgumentException e) {
+            // esperada
+        }
+        check("no valida: historial", h.size() == 1 && h.redoSize() == 1 && h.pushes() == 0
+                && h.version() == version && h.toLurd().equals("r"));
+        board.undoMove();
+        check("no valida: deshacer", board.pl_x == 1 && h.size() == 0 && h.redoSize() == 2);
+        check("no valida: rehacer", board.redoMove() && board.redoMove() && board.pl_x == 3
+                && h.pushes() == 1 && !board.redoMove());
+    }
+
+    private static void check(String name, boolean ok) {
+        if (!ok) {
+            failures++;
+            System.out.println("FALLO " + name);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package sokoapplet;
+
+import java.util.Arrays;
+
+/**
+ * Búsqueda de caminos del jugador y de empujes de una caja sobre un tablero, para mover con el ratón.
+ * <br/>
+ * <a href="../../src/sokoapplet/PathFinder.java">[Pulse aquí para ver el código fuente]</a>
+ * <hr/>
+ * Ambas búsquedas son en anchura (BFS), por lo que encuentran el camino más corto: en movimientos
+ * para walk() y en empujes para push(). El resultado es la secuencia de movimientos codificados como
+ * en MoveHistory, que se aplica de una vez con Board.replay().<br/>
+ * Todos los arrays de trabajo se crean al construir el PathFinder con el tamaño del tablero y se
+ * reutilizan en cada búsqueda: las casillas visitadas se marcan con un número de pasada en lugar de
+ * borrar el array, de forma que una búsqueda no reserva memoria (salvo para alargar el array de
+ * movimientos si el camino no cabe) y su coste sólo depende de las casillas que recorre.<br/>
+ * El tablero no se modifica durante la búsqueda; la caja que se empuja se sigue en una variable aparte.
+ *
+ * @author Fernando Carmona Varo
+ */
+public class PathFinder {
+
+    /**  Tablero sobre el que se busca */
+    private final Board board;
+    /* Búsqueda del jugador: marcas de casillas visitadas, dirección por la que se llegó y cola */
+    private final int stamp[];
+    private final byte from[];
+    private final int queue[];
+    private int mark;
+    /* Búsqueda de empujes: estados (casilla de la caja * 4 + dirección del empuje), marcas,
+       estado anterior de cada uno, cola y camino de estados de la solución */
+    private final int pushStamp[];
+    private final int parent[];
+    private final int pushQueue[];
+    private final int path[];
+    private int pushMark;
+    /**  Movimientos del último camino encontrado */
+    private byte moves[] = new byte[64];
+    private int length;
+
+    /**
+     * Construye el buscador para un tablero, reservando los arrays de trabajo
+     *
+     * @param board Tablero sobre el que buscar
+     */
+    public PathFinder(Board board) {
+        this.board = board;
+        int size = board.XLim * board.YLim;
+        stamp = new int[size];
+        from = new byte[size];
+        queue = new int[size];
+        pushStamp = new int[size * 4];
+        parent = new int[size * 4];
+        pushQueue = new int[size * 4];
+        path = new int[size * 4];
+    }
+
+    /**
+     * @return Movimientos codificados del último camino encontrado (válidos hasta la siguiente búsqueda)
+     */
+    public byte[] moves() {
+        return moves;
+    }
+
+    /**
+     * Busca el camino más corto del jugador hasta una casilla, sin empujar cajas
+     *
+     * @param target Casilla de destino (y*XLim+x)
+     * @return Número de movimientos del camino, que quedan en moves(), o -1 si no se puede llegar
+     */
+    public int walk(int target) {
+        length = 0;
+        if (target < 0 || target >= stamp.length || !free(target, -1, -1)
+                || !search(board.player, target, -1, -1)) {
+            return -1;
+        }
+        appendWalk(board.player, target);
+        return length;
+    }
+
+    /**
+     * Busca la forma de llevar una caja hasta una casilla con el menor número de empujes,
+     * incluyendo los movimientos del jugador entre empujes
+     *
+     * @param box Casilla de la caja
+     * @param target Casilla de destino de la caja
+     * @return Número de movimientos del camino, que quedan en moves(), o -1 si no es posible
+     */
+    public int push(int box, int target) {
+        length = 0;
+        if (box < 0 || box >= stamp.length || !board.isPushable(box)
+                || target < 0 || target >= stamp.length || !free(target, -1, box)) {
+            return -1;
+        }
+        if (box == target) {
+            return 0;
+        }
+        if (++pushMark == 0) {
+            Arrays.fill(pushStamp, 0);
+            pushMark = 1;
+        }
+        int head = 0, tail = 0;
+        // estados iniciales: los lados de la caja a los que puede llegar el jugador
+        tail = expand(box, board.player, box, -1, tail);
+        while (head < tail) {
+            int state = pushQueue[head++];
+            int b = state >> 2, dir = state & 3;
+            int next = b + board.offset[dir];
+            if (next == target) {
+                emit(state, box);
+                return length;
+            }
+            tail = expand(next, b, box, state, tail);
+        }
+        return -1;
+    }
+
+    /**
+     * Añade a la cola de empujes los que puede hacer el jugador, desde su casilla, sobre una caja
+     *
+     * @param b Casilla de la caja
+     * @param pl Casilla del jugador
+     * @param box Casilla original de la caja, que ya no la ocupa
+     * @param prev Estado desde el que se llega, o -1 si es el inicial
+     * @param tail Final de la cola
+     * @return Nuevo final de la cola
+     */
+    private int expand(int b, int pl, int box, int prev, int tail) {
+        search(pl, -1, b, box);
+        for (int dir = 0; dir < 4; dir++) {
+            int side = board.neighbour(b, dir ^ 2);
+            int next = board.neighbour(b, dir);
+            int state = b << 2 | dir;
+            if (side >= 0 && next >= 0 && stamp[side] == mark && free(next, -1, box)
+                    && pushStamp[state] != pushMark) {
+                pushStamp[state] = pushMark;
+                parent[state] = prev;
+                pushQueue[tail++] = state;
+            }
+        }
+        return tail;
+    }
+
+    /**
+     * Genera los movimientos de la secuencia de empujes que acaba en el estado dado
+     *
+     * @param last Último empuje
+     * @param box Casilla original de la caja
+     */
+    private void emit(int last, int box) {
+        int n = 0;
+        for (int s = last; s >= 0; s = parent[s]) {
+            path[n++] = s;
+        }
+        int pl = board.player;
+        while (n > 0) {
+            int state = path[--n];
+            int b = state >> 2, dir = state & 3;
+            int side = b - board.offset[dir];
+            search(pl, side, b, box);
+            appendWalk(pl, side);
+            append(dir | MoveHistory.PUSH);
+            pl = b;
+        }
+    }
+
+    /**
+     * Comprueba si el jugador o una caja pueden ocupar una casilla
+     *
+     * @param cell Casilla
+     * @param box Casilla en la que está la caja que se mueve, o -1
+     * @param ignore Casilla original de la caja que se mueve, que ya no la ocupa, o -1
+     */
+    private boolean free(int cell, int box, int ignore) {
+        return cell != box && (board.layout[cell] & Board.L_WALL) == 0
+                && (!board.isPushable(cell) || cell == ignore);
+    }
+
+    /**
+     * Búsqueda en anchura del jugador. Deja marcadas en stamp (con mark) las casillas alcanzadas
+     * y en from la dirección por la que se llegó a cada una.
+     *
+     * @param start Casilla del jugador
+     * @param target Casilla en la que parar, o -1 para recorrer toda la zona alcanzable
+     * @param box Casilla en la que está la caja que se mueve, o -1
+     * @param ignore Casilla original de la caja que se mueve, o -1
+     * @return true si se ha llegado a target
+     */
+    private boolean search(int start, int target, int box, int ignore) {
+        if (++mark == 0) {
+            Arrays.fill(stamp, 0);
+            mark = 1;
+        }
+        int head = 0, tail = 0;
+        stamp[start] = mark;
+        queue[tail++] = start;
+        while (head < tail) {
+            int cell = queue[head++];
+            if (cell == target) {
+                return true;
+            }
+            for (int dir = 0; dir < 4; dir++) {
+                int next = board.neighbour(cell, dir);
+                if (next >= 0 && stamp[next] != mark && free(next, box, ignore)) {
+                    stamp[next] = mark;
+                    from[next] = (byte) dir;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Añade los movimientos del camino encontrado por la última búsqueda desde start hasta target
+     */
+    private void appendWalk(int start, int target) {
+        int n = 0;
+        for (int cell = target; cell != start; cell -= board.offset[from[cell]]) {
+            n++;
+        }
+        ensure(length + n);
+        int i = length + n;
+        for (int cell = target; cell != start; cell -= board.offset[from[cell]]) {
+            moves[--i] = from[cell];
+        }
+        length += n;
+    }
+
+    private void append(int code) {
+        ensure(length + 1);
+        moves[length++] = (byte) code;
+    }
+
+    private void ensure(int n) {
+        if (n > moves.length) {
+            moves = Arrays.copyOf(moves, Math.max(n, moves.length * 2));
+        }
+    }
+}
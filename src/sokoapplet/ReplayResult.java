@@ -0,0 +1,33 @@
+package sokoapplet;
+
+/**
+ * Resultado de reproducir de una vez una secuencia de movimientos sobre un tablero (ver Board.replay()).
+ * <br/>
+ * <a href="../../src/sokoapplet/ReplayResult.java">[Pulse aquí para ver el código fuente]</a>
+ *
+ * @author Fernando Carmona Varo
+ */
+public class ReplayResult {
+    /** Tablero sobre el que se ha reproducido la secuencia, en su estado final */
+    public Board board;
+    /** Número de movimientos y empujes aplicados */
+    public int moves, pushes;
+    /** Posición en la secuencia del primer movimiento no válido, o -1 si se han aplicado todos */
+    public int illegalAt = -1;
+    /** Si el nivel ha quedado resuelto, aunque la secuencia siga con un movimiento no válido */
+    public boolean solved;
+
+    /**
+     * @return true si se han podido aplicar todos los movimientos de la secuencia
+     */
+    public boolean isLegal() {
+        return illegalAt < 0;
+    }
+
+    @Override
+    public String toString() {
+        // como en SolutionVerifier, un movimiento no válido invalida la secuencia aunque resuelva el nivel
+        return (!isLegal() ? "ILLEGAL at " + illegalAt : solved ? "SOLVED" : "UNSOLVED")
+                + " moves=" + moves + " pushes=" + pushes;
+    }
+}
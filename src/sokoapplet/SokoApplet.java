@@ -0,0 +1,688 @@
+package sokoapplet;
+
+import java.applet.*;
+import java.awt.*;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.net.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+
+/**
+ * Clase principal del applet para el juego, conteniendo la interfaz.
+ * <br/>
+ * <a href="../../src/sokoapplet/SokoApplet.java">[Pulse aquí apra ver el código fuente]</a>
+ * <hr/>
+ * En el desarrollo de esta aplicación se ha separado a conciencia el programa en dos clases,
+ * Esta clase sirve como interfaz con el usuario y se encarga de cargar los recursos externos multimedia,
+ * archivo de niveles (levelset) y gestión de los eventos de teclado recibidos, mientras que el código 
+ * que implementa el comportamiento del juego está en una clase aparte (Board).<br/>
+ * 
+ * De este modo sería sencillo programar otras interfaces para el mismo juego, portandolo a otros toolkits.<br/><br/>
+ *
+ * A continuación una screenshot del 
+ * <img src="screenshot.png"/>
+ *
+ * <hr/>
+ * El applet que recibe dos parámetros: “levelset” y “theme”. Ambos deben ser URLs (relativas o absolutas) en la que se encuentra el archivo que contiene el pack de niveles y el directorio que contiene el tema de gráficos y sonido.
+ * 
+ * <h3>El formato de lectura de packs de niveles (levelsets)</h3>
+ * Para cargar los niveles se emplea la lectura de un archivo externo de niveles en formato texto, que se indexa al cargarlo (ver LevelPack). Este formato es el que se usa frecuentemente para compartir niveles por internet compatibles con otras versiones del juego Sokoban. Algunos ejemplos de archivos de niveles compatibles con este applet se pueden, por ejemplo, desde el siguiente enlace: http://users.bentonrea.com/~sasquatch/sokoban/
+ * 
+ * <h3>El formato de lectura de packs de gráficos y sonido (themes)</h3>
+ * En este caso se trata simplemente de un conjunto de ficheros situados en la dirección dada, que se cargan en paralelo antes de empezar a dibujar (ver Theme).
+ * 
+ * <h3>Mostrando el tablero por pantalla</h3>
+ * Simplemente se recorren las posiciones del tablero, y mediante llamadas a Board se va viendo que contiene cada casilla y dibujando en pantalla la imagen correspondiente al objeto de esa casilla. Si el objeto no es reconocido o no existe una imagen correcta para este, el espacio quedará vacío.<br/>
+ * El tablero no se dibuja directamente sino a través de BoardRenderer, que mantiene una imagen fuera de pantalla del tablero y sólo recompone las casillas que el tablero notifica como cambiadas, de forma que tras cada movimiento se vuelca a pantalla únicamente el rectángulo que ha cambiado, evitando parpadeos y tener que actualizar todo el Graphics del applet.
+ * 
+ * <h3>El escuchador de eventos</h3>
+ * En lugar de implementar ActionListener, ni crear una clase aparte se ha utilizado el método “processKeyEvent” y activado los eventos de teclado previamente mediante “enableEvents(java.awt.AWTEvent.KEY_EVENT_MASK);”<br/>
+ * El escuchador de eventos no toca el tablero: sólo pasa la tecla pulsada al bucle de juego (GameLoop), que la aplica en su propio hilo. Así las pulsaciones repetidas al mantener una tecla se aplican juntas y se dibujan una sola vez, y el applet sigue respondiendo aunque una orden tarde en aplicarse.<br/>
+ * Por lo mismo paint() tampoco toca el tablero: el bucle compone cada dibujado en una imagen del applet completo (sólo la parte que ha cambiado) y paint() vuelca a pantalla la última imagen terminada, sin esperar a que el bucle termine de aplicar órdenes.<br/>
+ * Tras cada orden se comprueba si se ha ganado el juego en ese tablero, y si esto ocurre pasa al siguiente nivel, cambiando de tablero.<br/>
+ * Con la tecla P se pide una pista, que hace el siguiente empuje de una solución (ver HintService). Si la pista no está ya calculada se busca en segundo plano y se aplica al terminar, si el tablero no ha cambiado mientras tanto.<br/>
+ * Con Inicio, Fin, RePág y AvPág se recorre el historial de movimientos (ver Timeline): cada salto restaura
+ * el punto de control más cercano y se dibuja una sola vez, aunque salte miles de movimientos.<br/>
+ * También se puede jugar con el ratón mediante “processMouseEvent”: al pulsar en una casilla el jugador va hasta ella por el camino más corto, y al arrastrar una caja hasta otra casilla el jugador la empuja hasta allí. Los caminos se buscan con PathFinder y todos sus movimientos se aplican de una vez con un único redibujado.
+ *  
+ * @author Fernando Carmona Varo
+ */
+public class SokoApplet extends Applet {
+	
+	static final long serialVersionUID=0;
+	/** Fuente a usar al mostrar información de ayuda */
+	static final Font font = new Font("Helvetica", Font.PLAIN, 12);
+	/** Fuente a usar al mostrar el título y nivel del juego */
+	static final Font fontb = new Font("Helvetica", Font.BOLD, 20);
+	/** Tamaño en pixeles de las imagenes para las casillas */
+	static final int tSize = 24;
+	/** Tema de imágenes y sonidos en uso */
+	Theme theme;
+	/** Temas entre los que se puede cambiar durante la partida, y el que está en uso */
+	URL themeUrls[];
+	int currentTheme;
+	/** Tablero del juego actual, que contiene el estado y la lógica de juego */
+	Board board;
+	/** Imagen fuera de pantalla del tablero, que se actualiza con los cambios del tablero */
+	BoardRenderer renderer;
+	/** Contador de niveles */
+	int currentLevel;
+	/** Si se deben mostrar por System.out las trazas de los movimientos del tablero */
+	boolean trace;
+	/** Si se debe avisar al jugador en cuanto el tablero quede bloqueado */
+	boolean showDeadlocks;
+	/** Lista de niveles del pack de niveles cargado (levelset) */
+	LevelSource levels;
+	/** Bucle de juego que aplica las teclas pulsadas sobre el tablero */
+	GameLoop loop;
+	/** Si se ha empujado alguna caja desde el último dibujado, y si se mostraba el aviso de bloqueo */
+	boolean pushed, deadlockShown;
+	/** Buscador de caminos para el ratón sobre el tablero actual */
+	PathFinder pathFinder;
+	/** Casilla de la caja que se está arrastrando con el ratón, o -1 */
+	int dragFrom = -1;
+	/* Órdenes del ratón para el bucle de juego, con la posición en pixeles (x en los bits bajos e y en los altos) */
+	static final int MOUSE_DOWN = 1 << 28, MOUSE_UP = 2 << 28, MOUSE_MASK = 3 << 28, MOUSE_BITS = 14;
+	/** Orden para el bucle de juego de pista calculada en segundo plano */
+	static final int HINT_READY = 1 << 30;
+	/** Orden para el bucle de juego de recomponer todo el applet */
+	static final int REDRAW = 1 << 31;
+	/** Imagen del applet completo con el último dibujado terminado, que paint() vuelca a pantalla */
+	BufferedImage screen;
+	/** Cerrojo de la imagen del applet, que sólo se toma mientras se copia en ella o desde ella */
+	final Object screenLock = new Object();
+	/** Si hay que recomponer todo el applet en el siguiente dibujado */
+	boolean fullRedraw = true;
+	/** Servicio de pistas del pack de niveles */
+	HintService hints;
+	/** Si se está buscando una pista en segundo plano. Lo vuelve a poner a false el hilo de búsqueda al terminar */
+	final AtomicBoolean hintPending = new AtomicBoolean();
+	/** Linea de estado mostrada bajo el tablero */
+	String statusShown;
+	/** Línea temporal del tablero actual, para recorrer su historial */
+	Timeline timeline;
+	/** Movimientos que se avanzan o retroceden en el historial con RePág y AvPág */
+	static final int SCRUB_STEP = 50;
+	/** Prepara en segundo plano el nivel siguiente y el anterior al actual */
+	LevelPrefetcher prefetcher;
+	
+	/**
+	 * Función de inicialización del applet
+	 * Los parámetros del juego a cargar que deberán indicarse mediante etiquetas html son:
+	 * 
+	 ** levelset (opcional) *
+	 * Dirección URL indicando el archivo en formato texto de niveles Sokoban a cargar 
+	 * (o un pack precompilado en formato binario, si acaba en ".sokp", ver BinaryLevelPack)
+	 * Si no se especifica se tomará por defecto el fichero  "levels.txt" del directorio en el que se 
+	 * esté ejecutando el Applet. 
+	 * La ruta puede ser absoluta o relativa.
+	 * 
+	 ** theme (opcional) *
+	 * Dirección URL indicando el directorio dónde se encuentran los archivos de audio e imágenes.
+	 * Si no se especifica se tomará por defecto el directorio web en el que se esté ejecutando el applet.
+	 * La ruta puede ser absoluta o relativa.
+	 * 
+	 ** themes (opcional) *
+	 * Lista de direcciones de otros temas, separadas por comas, entre los que se puede cambiar con la tecla T.
+	 * Todos los temas se cargan en segundo plano al iniciar el applet.
+	 * 
+	 ** deadlocks (opcional) *
+	 * Si vale "true" se avisará en cuanto un empuje deje el nivel bloqueado (sin solución posible).
+	 * 
+	 ** trace (opcional) *
+	 * Si vale "true" se mostrarán por System.out trazas de depuración de cada movimiento, y los tiempos
+	 * de dibujado al cambiar de nivel.
+	 * 
+	 ** fps (opcional) *
+	 * Número máximo de veces por segundo que se redibuja el tablero (60 por defecto).
+	 */
+	@Override
+	public void init() {
+		super.init();
+
+		// Inicializar parámetros 
+		setSize(500, 500);                              				
+
+		// Cargar el contenido gráfico y audio
+		
+		URL themeUrl;
+		try {
+			themeUrl = new URL( getDocumentBase(), getParameter("theme") );
+		} catch (MalformedURLException e) {
+			System.out.println("No se ha indicado un Tema de imagenes/sonidos, o la dirección indicada" +
+					" es incorrecta, se usará la URL base del Applet en su defecto.");
+			themeUrl= getDocumentBase();
+		}				
+		java.util.List<URL> urls = new java.util.ArrayList<URL>();
+		urls.add(themeUrl);
+		String others = getParameter("themes");
+		if (others != null) {
+			for (String t : others.split(",")) {
+				try {
+					URL u = new URL(getDocumentBase(), t.trim());
+					if (!urls.contains(u)) {
+						urls.add(u);
+					}
+				} catch (MalformedURLException e) {
+					System.out.println("Dirección de tema incorrecta: " + t);
+				}
+			}
+		}
+		themeUrls = urls.toArray(new URL[urls.size()]);
+		// Se piden todos los temas para que se vayan cargando en paralelo y cambiar entre ellos sea inmediato
+		Runnable progress = new Runnable() {
+			public void run() {
+				if (theme.isLoaded() && loop != null) {
+					loop.submit(REDRAW);
+				}
+				repaint();
+			}
+		};
+		for (int i = themeUrls.length - 1; i >= 0; i--) {
+			theme = Theme.get(themeUrls[i], tSize);
+			theme.addProgressListener(progress);
+		}
+		currentTheme = 0;
+		renderer = new BoardRenderer(theme);
+
+
+		trace = "true".equals(getParameter("trace"));
+		showDeadlocks = "true".equals(getParameter("deadlocks"));
+		int fps = 60;
+		try {
+			fps = Integer.parseInt(getParameter("fps"));
+		} catch (NumberFormatException e) {
+			// se usa el valor por defecto
+		}
+		loop = new GameLoop(new GameLoop.Handler() {
+			public void handle(int command) {
+				if (command == REDRAW) {
+					fullRedraw = true;
+				} else if (command == HINT_READY) {
+					hint(false);
+				} else if ((command & MOUSE_MASK) != 0) {
+					handleMouse(command);
+				} else {
+					handleKey(command);
+				}
+				if (board.hasWon()) {
+					play(theme.getCompletedClip());
+					nextLevel();
+				}
+			}
+			public void render() {
+				renderChanges();
+			}
+		}, 64, fps);
+
+		// load the levels from the levelfile
+		String lvlFile= getParameter("levelset");
+		if(lvlFile==null) {
+			System.out.println("No se ha indicado LevelSet, se usará \"levels.txt\" por defecto.");
+			lvlFile="levels.txt";
+		}
+		try {            
+			InputStream in = new URL(this.getCodeBase(), lvlFile).openStream();
+			try {
+				if (lvlFile.endsWith(".sokp")) {
+					levels = BinaryLevelPack.load(new BufferedInputStream(in));
+				} else {
+					levels = LevelPack.load(new BufferedInputStream(in));
+				}
+			} finally {
+				in.close();
+			}
+		} catch (Exception ex) {
+			System.out.println("** Error cargando el archivo de niveles **");
+			Logger.getLogger(SokoApplet.class.getName()).log(Level.SEVERE, null, ex);
+		}
+		if (levels == null || levels.size() == 0) {
+			levels = new LevelPack("#####\n#@$.#\n#####\n");
+		}
+		hints = new HintService(HintService.fileFor(lvlFile), 10000);
+		prefetcher = new LevelPrefetcher(levels, 5);
+		currentLevel = -1;
+		nextLevel();
+		
+		requestFocus();
+		enableEvents(java.awt.AWTEvent.KEY_EVENT_MASK | java.awt.AWTEvent.MOUSE_EVENT_MASK);		
+	}
+
+	/**
+	 * Arranca el bucle de juego al mostrarse el applet
+	 */
+	@Override
+	public void start() {
+		loop.start();
+		loop.submit(REDRAW);
+	}
+
+	/**
+	 * Para el bucle de juego al ocultarse el applet
+	 */
+	@Override
+	public void stop() {
+		loop.stop();
+	}
+
+	/**
+	 * Para el hilo que prepara los niveles al descargarse el applet
+	 */
+	@Override
+	public void destroy() {
+		prefetcher.close();
+	}
+
+	
+	/**
+	 * Pasa al siguiente nivel del juego, actualizando el contador.
+	 */
+	private void nextLevel() {
+		currentLevel++;
+		if (currentLevel >= levels.size()) {
+			currentLevel--;
+		}
+		System.out.println("Starting level " + currentLevel + "...");
+		restartLevel();
+	}
+	
+	/**
+	 * Regresa al anterior nivel del juego, actualizando el contador
+	 */
+	private void previousLevel() {        
+		if(currentLevel > 0) {
+			currentLevel--;        
+			System.out.println("Starting level " + currentLevel + "...");
+		}
+		restartLevel();
+	}
+
+	/**
+	 * Reinicia el nivel actual dado por el contador de niveles y redibuja la pantalla.
+	 * 
+	 * nextLevel y previousLevel siempre llaman a este método al final, de forma que
+	 * tras cambiar el contador siempre se creará un nuevo Tablero de juego con el estado
+	 * inicial del juego dado por el String correcpondiente almacenado en la lista de niveles.<br/>
+	 * El nivel se toma del LevelPrefetcher, que normalmente ya lo tendrá preparado (tablero y capa
+	 * estática dibujada), y se le pide que prepare el siguiente y el anterior mientras se juega.
+	 */
+	private void restartLevel() {
+		LevelPrefetcher.Level level = prefetcher.get(currentLevel, theme);
+		board = level.newBoard();
+		if (trace) {
+			board.addBoardListener(new BoardTracer());
+			System.out.println(loop);
+			System.out.println(hints);
+			System.out.println(prefetcher);
+		}
+		renderer.setBoard(board, level.getBackground(theme));
+		prefetcher.prefetch(theme, currentLevel + 1, currentLevel - 1);
+		pathFinder = new PathFinder(board);
+		timeline = new Timeline(board, Timeline.INTERVAL);
+		dragFrom = -1;
+		fullRedraw = true;
+	}
+
+	
+	
+	/**
+	 *  Función de dibujado en pantalla del mapa de juego.
+	 *  Se vuelca la imagen del último dibujado terminado por el bucle de juego, sólo en la zona de
+	 *  recorte, sin tomar el cerrojo del bucle.
+	 */
+	@Override
+	public void paint(Graphics g) {		
+		Dimension d = this.getSize();
+		if (d.width * d.height == 0) return; // Por si acaso alguien cambia el tamaño en el html
+		if (!theme.isLoaded()) {
+			paintProgress(g, d);
+			return;
+		}
+		boolean stale;
+		synchronized (screenLock) {
+			if (screen != null) {
+				g.drawImage(screen, 0, 0, null);
+			}
+			stale = screen == null || screen.getWidth() != d.width || screen.getHeight() != d.height;
+		}
+		if (stale) {
+			loop.submit(REDRAW); // aún no se ha dibujado o ha cambiado el tamaño del applet
+		}
+	}
+
+	/**
+	 * Compone en la imagen del applet una zona del dibujado. Se llama desde el bucle de juego.
+	 * 
+	 * @param clip Zona a recomponer, o null para todo el applet
+	 */
+	private void compose(Rectangle clip) {
+		Dimension d = this.getSize();
+		if (d.width * d.height == 0) return;
+		synchronized (screenLock) {
+			if (screen == null || screen.getWidth() != d.width || screen.getHeight() != d.height) {
+				screen = new BufferedImage(d.width, d.height, BufferedImage.TYPE_INT_RGB);
+				clip = null;
+			}
+			Graphics g = screen.getGraphics();
+			if (clip != null) {
+				g.setClip(clip);
+			}
+			paintBoard(g, d);
+			g.dispose();
+		}
+	}
+
+	/**
+	 * Dibuja el tablero y la información del juego, desde el bucle de juego
+	 */
+	private void paintBoard(Graphics g, Dimension d) {
+		int x = 20, y = 20;
+		if (!theme.isLoaded()) {
+			paintProgress(g, d);
+			return;
+		}
+		Point o = boardOrigin();
+		int w = renderer.getWidth(), h = renderer.getHeight();
+
+		// fondo alrededor del tablero, sin borrar el tablero para evitar parpadeos
+		g.setColor(Color.black);
+		g.fillRect(0, 0, d.width, o.y);
+		g.fillRect(0, o.y + h, d.width, d.height - o.y - h);
+		g.fillRect(0, o.y, o.x, h);
+		g.fillRect(o.x + w, o.y, d.width - o.x - w, h);
+		g.setFont(fontb);
+		g.setColor(Color.red);
+		g.drawString("~ Sokoban :: Level " + (currentLevel+1) +  " ~", d.width / 4, y);
+		y += 20;
+		g.setFont(font);        
+		g.drawString("Flechas/ratón: movimiento, R: reinicia nivel, +/-: cambia nivel, U: deshacer, T: tema, P: pista",x,y);
+		g.drawString("Y: rehacer, Inicio/Fin/RePág/AvPág: recorre el historial",x,y + 14);
+
+		renderer.draw(g, o.x, o.y);
+		statusShown = status();
+		g.setColor(Color.red);
+		g.drawString(statusShown, o.x, o.y + h + 32);
+		if (showDeadlocks && board.isDeadlocked()) {
+			g.setColor(Color.red);
+			g.drawRect(o.x - 2, o.y - 2, w + 3, h + 3);
+			g.drawString("¡Bloqueado! U: deshacer, R: reiniciar", o.x, o.y + h + 16);
+		}
+	}
+
+	/**
+	 * Muestra el progreso de la carga del tema
+	 */
+	private void paintProgress(Graphics g, Dimension d) {
+		g.setColor(Color.black);
+		g.fillRect(0, 0, d.width, d.height);
+		g.setColor(Color.red);
+		g.setFont(font);
+		g.drawString("Cargando tema... " + theme.getProgress() + "%", d.width / 4, d.height / 2 - 10);
+		g.drawRect(d.width / 4, d.height / 2, d.width / 2, 10);
+		g.fillRect(d.width / 4, d.height / 2, d.width / 2 * theme.getProgress() / 100, 10);
+	}
+
+	/**
+	 * Cambia al siguiente tema de la lista de temas, que ya estará cargado o cargándose
+	 */
+	private void nextTheme() {
+		currentTheme = (currentTheme + 1) % themeUrls.length;
+		theme = Theme.get(themeUrls[currentTheme], tSize);
+		renderer.setTheme(theme);
+		fullRedraw = true;
+	}
+
+	/**
+	 * Reproduce un sonido del tema, si se ha podido cargar
+	 */
+	private void play(AudioClip clip) {
+		if (clip != null) {
+			clip.play();
+		}
+	}
+
+	/**
+	 * Se sobreescribe para no borrar el applet antes de dibujar, ya que paint() dibuja todo su área
+	 */
+	@Override
+	public void update(Graphics g) {
+		paint(g);
+	}
+
+	/**
+	 * Devuelve la posición en pantalla de la esquina superior izquierda del tablero
+	 */
+	private Point boardOrigin() {
+		Dimension d = this.getSize();
+		return new Point((d.width-(board.XLim*tSize))/2, (50+d.height-(board.YLim*tSize))/2);
+	}
+
+	/**
+	 * Redibuja sólo las casillas del tablero que han cambiado desde el último dibujado,
+	 * para evitar lo máximo posible los parpadeos.
+	 */	
+	private void drawChanges() {
+		Rectangle r = renderer.flush();
+		if (r != null) {
+			Point o = boardOrigin();
+			r.translate(o.x, o.y);
+			compose(r);
+			repaint(r.x, r.y, r.width, r.height);
+		}
+	}
+
+	/**
+	 * Dibuja el resultado de todas las teclas aplicadas desde el último dibujado.
+	 * Se llama desde el bucle de juego, una vez por cada grupo de teclas.
+	 */
+	private void renderChanges() {
+		if (pushed) {
+			play(theme.getPushedClip());
+			pushed = false;
+		}
+		boolean deadlocked = showDeadlocks && board.isDeadlocked();
+		if (fullRedraw || deadlocked != deadlockShown) {
+			// nivel o tema nuevo, o mostrar u ocultar el aviso de bloqueo
+			deadlockShown = deadlocked;
+			renderer.flush();
+			compose(null);
+			fullRedraw = !theme.isLoaded();
+			repaint();
+			return;
+		}
+		drawChanges();
+		if (!status().equals(statusShown)) {
+			Point o = boardOrigin();
+			int top = o.y + board.YLim * tSize;
+			Rectangle r = new Rectangle(0, top, getSize().width, getSize().height - top);
+			compose(r);
+			repaint(r.x, r.y, r.width, r.height);
+		}
+	}
+
+	/**
+	 * Devuelve la linea de estado: movimientos, empujes y mínimo de empujes restantes (ver Board.pushLowerBound())
+	 */
+	private String status() {
+		int bound = board.pushLowerBound();
+		return "Movimientos: " + board.moveNumber() + "  Empujes: " + board.getHistory().pushes()
+				+ "  Mínimo restante: " + (bound == LowerBound.INF ? "-" : String.valueOf(bound));
+	}
+
+
+	/**
+	 * Función que procesa los eventos de teclado, no es necesario un EventListener.
+	 * Sólo pasa la tecla al bucle de juego; si hay demasiadas teclas pendientes se descarta.
+	 * 
+	 * @param e Evento de teclado recibido
+	 */
+	@Override
+	protected void processKeyEvent(KeyEvent e) {
+		super.processKeyEvent(e);
+		if (e.getID() == KeyEvent.KEY_PRESSED) {
+			loop.submit(e.getKeyCode());
+		}
+	}
+
+	/**
+	 * Aplica una tecla pulsada sobre el juego. Se llama desde el bucle de juego.
+	 * 
+	 * @param keyCode Código de la tecla (ver KeyEvent)
+	 */
+	private void handleKey(int keyCode) {
+		boolean mov=false;
+		switch (keyCode) {
+		case KeyEvent.VK_RIGHT:
+		case KeyEvent.VK_L:
+			mov= board.movePlayer(+1, 0);                    	
+			break;
+		case KeyEvent.VK_LEFT:
+		case KeyEvent.VK_H:
+			mov= board.movePlayer(-1, 0);
+			break;
+		case KeyEvent.VK_UP:
+		case KeyEvent.VK_K:
+			mov= board.movePlayer(0, -1);
+			break;
+		case KeyEvent.VK_DOWN:
+		case KeyEvent.VK_J:
+			mov= board.movePlayer(0, +1);
+			break;
+
+		case KeyEvent.VK_U:
+			board.undoMove();
+			break;
+		case KeyEvent.VK_Y:
+			board.redoMove();
+			break;
+		case KeyEvent.VK_HOME:
+			jump(0);
+			break;
+		case KeyEvent.VK_END:
+			jump(timeline.length());
+			break;
+		case KeyEvent.VK_PAGE_UP:
+			jump(board.moveNumber() - SCRUB_STEP);
+			break;
+		case KeyEvent.VK_PAGE_DOWN:
+			jump(board.moveNumber() + SCRUB_STEP);
+			break;
+		case KeyEvent.VK_R:
+			restartLevel();
+			break;
+		case KeyEvent.VK_PLUS:
+			nextLevel();
+			break;
+		case KeyEvent.VK_MINUS:                	
+			previousLevel();
+			break;
+		case KeyEvent.VK_T:
+			nextTheme();
+			break;
+		case KeyEvent.VK_P:
+			hint(true);
+			break;
+		}            			
+		pushed |= mov;
+	}
+
+	/**
+	 * Salta a un movimiento del historial. Si se restaura un punto de control se redibujan todas las
+	 * cajas y el jugador sobre la capa estática, en el siguiente dibujado del bucle de juego.
+	 * 
+	 * @param target Número de movimientos tras el salto
+	 */
+	private void jump(int target) {
+		if (timeline.jump(target)) {
+			renderer.invalidatePieces();
+		}
+	}
+
+	/**
+	 * Hace el siguiente empuje de una solución desde el estado actual, si ya se conoce.
+	 * Si no, empieza a buscarla en segundo plano y al terminar se vuelve a llamar (orden HINT_READY).
+	 * 
+	 * @param search Si se debe buscar la pista si no se conoce. Es false al terminar una búsqueda, para
+	 *          no empezar otra si no ha encontrado solución o el tablero ha cambiado mientras tanto
+	 */
+	private void hint(boolean search) {
+		int push = hints.lookup(board);
+		if (push == HintService.MISS) {
+			if (search && hintPending.compareAndSet(false, true)) {
+				System.out.println("Buscando pista...");
+				hints.solveAsync(board, new Runnable() {
+					public void run() {
+						hintPending.set(false);
+						// si la cola está llena la pista no se aplica sola, pero ya está en la caché
+						loop.submit(HINT_READY);
+					}
+				});
+			}
+			return;
+		}
+		if (push == HintService.NO_SOLUTION) {
+			System.out.println("No hay solución desde esta posición, deshaga algún movimiento");
+			return;
+		}
+		int box = push >> 2, dir = push & 3;
+		int side = box - board.offset[dir];
+		int n = side == board.player ? 0 : pathFinder.walk(side);
+		if (n >= 0) {
+			board.replay(pathFinder.moves(), 0, n);
+			pushed |= board.movePlayer(Board.DX[dir], Board.DY[dir]);
+		}
+	}
+
+	/**
+	 * Función que procesa los eventos del ratón. Al igual que con el teclado, sólo pasa la
+	 * pulsación al bucle de juego.
+	 * 
+	 * @param e Evento de ratón recibido
+	 */
+	@Override
+	protected void processMouseEvent(MouseEvent e) {
+		super.processMouseEvent(e);
+		int pos = Math.min(Math.max(e.getX(), 0), (1 << MOUSE_BITS) - 1)
+				| Math.min(Math.max(e.getY(), 0), (1 << MOUSE_BITS) - 1) << MOUSE_BITS;
+		if (e.getID() == MouseEvent.MOUSE_PRESSED) {
+			requestFocus();
+			loop.submit(MOUSE_DOWN | pos);
+		} else if (e.getID() == MouseEvent.MOUSE_RELEASED) {
+			loop.submit(MOUSE_UP | pos);
+		}
+	}
+
+	/**
+	 * Aplica una pulsación del ratón sobre el juego. Se llama desde el bucle de juego.<br/>
+	 * Al pulsar sobre una caja se empieza a arrastrar; al soltar en otra casilla se empuja la caja
+	 * hasta ella, y si no se arrastraba ninguna caja el jugador camina hasta la casilla.
+	 * 
+	 * @param command Orden MOUSE_DOWN o MOUSE_UP con la posición en pixeles
+	 */
+	private void handleMouse(int command) {
+		Point o = boardOrigin();
+		int x = Math.floorDiv((command & ((1 << MOUSE_BITS) - 1)) - o.x, tSize);
+		int y = Math.floorDiv((command >> MOUSE_BITS & ((1 << MOUSE_BITS) - 1)) - o.y, tSize);
+		int cell = x >= 0 && y >= 0 && x < board.XLim && y < board.YLim ? y * board.XLim + x : -1;
+		if ((command & MOUSE_MASK) == MOUSE_DOWN) {
+			dragFrom = cell >= 0 && board.isPushable(cell) ? cell : -1;
+			return;
+		}
+		int n;
+		if (dragFrom >= 0) {
+			n = pathFinder.push(dragFrom, cell);
+			dragFrom = -1;
+		} else {
+			n = pathFinder.walk(cell);
+		}
+		if (n > 0) {
+			pushed |= board.replay(pathFinder.moves(), 0, n).pushes > 0;
+		}
+	}
+}
@@ -0,0 +1,181 @@
+package sokoapplet;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Herramienta de línea de comandos para comprobar en paralelo un archivo de soluciones de un pack.
+ * <br/>
+ * <a href="../../src/sokoapplet/SolutionVerifier.java">[Pulse aquí para ver el código fuente]</a>
+ * <hr/>
+ * Cada solución se reproduce de una vez sobre un tablero nuevo de su nivel con Board.replay(), y se
+ * muestran las que tienen un movimiento no válido o no resuelven el nivel. Las soluciones se reparten
+ * entre tantos hilos como procesadores haya (o los indicados), y al final se muestra el número de
+ * soluciones y de movimientos comprobados por segundo.
+ *
+ * <h3>Archivo de soluciones</h3>
+ * Una solución por linea, con el número de nivel (desde 1) y la solución en formato LURD separados
+ * por un tabulador. También se acepta directamente el archivo de resultados de BatchSolver, del que
+ * se comprueban las lineas con solución del pack dado (BatchSolver puede procesar varios packs a la
+ * vez): las de otros packs se saltan y se muestra cuántas son. Se ignoran las lineas vacías y las que
+ * empiezan por ';'.
+ *
+ * <h3>Uso</h3>
+ * <code>java sokoapplet.SolutionVerifier [-threads N] pack soluciones.txt</code>
+ *
+ * @author Fernando Carmona Varo
+ */
+public class SolutionVerifier {
+
+    /**
+     * Comprueba una solución
+     *
+     * @param levels Niveles del pack
+     * @param level Número de nivel, desde 0
+     * @param lurd Solución en formato LURD
+     * @return Resultado de reproducirla, o null si el nivel no existe
+     */
+    static ReplayResult verify(LevelSource levels, int level, String lurd) {
+        if (level < 0 || level >= levels.size()) {
+            return null;
+        }
+        return levels.getBoard(level).replay(lurd);
+    }
+
+    /**
+     * Comprueba si el pack de una linea de resultados de BatchSolver es el pack dado. Se compara la
+     * ruta completa, o sólo el nombre si la ruta de la linea no existe desde el directorio actual.
+     */
+    static boolean samePack(String name, File pack) throws IOException {
+        File f = new File(name);
+        if (f.exists()) {
+            return f.getCanonicalFile().equals(pack.getCanonicalFile());
+        }
+        return f.getName().equals(pack.getName());
+    }
+
+    /**
+     * Lee las soluciones de un archivo
+     *
+     * @param file Archivo de soluciones
+     * @param pack Pack de los niveles, para saltar las lineas de resultados de otros packs
+     * @param levels Números de nivel (desde 1) de cada solución leída
+     * @param solutions Soluciones leídas
+     * @return Número de lineas saltadas por ser de otro pack
+     */
+    static int read(File file, File pack, List<Integer> levels, List<String> solutions) throws IOException {
+        int skipped = 0;
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            for (String line; (line = in.readLine()) != null; ) {
+                if (line.trim().length() == 0 || line.startsWith(";")) {
+                    continue;
+                }
+                String fields[] = line.split("\t", -1);
+                if (fields.length == 8) { // resultados de BatchSolver
+                    if (!samePack(fields[0], pack)) {
+                        skipped++;
+                    } else if (fields[7].length() > 0) {
+                        levels.add(Integer.valueOf(fields[1].trim()));
+                        solutions.add(fields[7]);
+                    }
+                } else if (fields.length == 2) {
+                    levels.add(Integer.valueOf(fields[0].trim()));
+                    solutions.add(fields[1]);
+                } else {
+                    throw new IOException("Linea no válida en " + file + ": " + line);
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return skipped;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int i = 0;
+        if (args.length > 1 && args[0].equals("-threads")) {
+            threads = Integer.parseInt(args[1]);
+            i = 2;
+        }
+        if (args.length - i != 2) {
+            System.err.println("Uso: java sokoapplet.SolutionVerifier [-threads N] pack soluciones.txt");
+            System.exit(1);
+        }
+        File pack = new File(args[i]);
+        final LevelSource levels = Solver.openPack(pack);
+        final List<Integer> numbers = new ArrayList<Integer>();
+        final List<String> solutions = new ArrayList<String>();
+        int skipped = read(new File(args[i + 1]), pack, numbers, solutions);
+        if (skipped > 0) {
+            System.out.println(skipped + " lineas de otros packs saltadas");
+        }
+        final int n = solutions.size();
+        final String errors[] = new String[n];
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicLong moves = new AtomicLong();
+
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> tasks = new ArrayList<Future<?>>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                tasks.add(pool.submit(new Runnable() {
+                    public void run() {
+                        long count = 0;
+                        for (int s; (s = next.getAndIncrement()) < n; ) {
+                            int level = numbers.get(s);
+                            ReplayResult res = verify(levels, level - 1, solutions.get(s));
+                            if (res == null) {
+                                errors[s] = "nivel " + level + ": no existe en el pack";
+                                continue;
+                            }
+                            count += res.moves;
+                            if (!res.isLegal()) {
+                                errors[s] = "nivel " + level + ": movimiento no válido en la posición " + res.illegalAt;
+                            } else if (!res.solved) {
+                                errors[s] = "nivel " + level + ": no resuelve el nivel";
+                            }
+                        }
+                        moves.addAndGet(count);
+                    }
+                }));
+            }
+            for (Future<?> f : tasks) {
+                f.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IOException("Error comprobando las soluciones", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        long nanos = Math.max(1, System.nanoTime() - start);
+
+        int failed = 0;
+        for (int s = 0; s < n; s++) {
+            if (errors[s] != null) {
+                System.out.println(errors[s]);
+                failed++;
+            }
+        }
+        double secs = nanos / 1e9;
+        System.out.println(n + " soluciones comprobadas, " + (n - failed) + " correctas, " + failed
+                + " incorrectas, en " + (nanos / 1000000) + "ms con " + threads + " hilos ("
+                + (long) (n / secs) + " soluciones/s, " + (long) (moves.get() / secs) + " movimientos/s)");
+        if (failed > 0) {
+            System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,471 @@
+package sokoapplet;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Resolutor automático de niveles, que trabaja sobre las reglas de movimiento de Board.
+ * <br/>
+ * <a href="../../src/sokoapplet/Solver.java">[Pulse aquí para ver el código fuente]</a>
+ * <hr/>
+ * Realiza una búsqueda A* sobre los empujes de las cajas partiendo del estado actual del tablero dado.
+ * Cada estado de la búsqueda es la posición de las cajas junto con la zona del tablero a la que puede
+ * llegar el jugador (normalizada a la menor casilla de esa zona), de forma que los movimientos del
+ * jugador que no empujan cajas no generan estados nuevos.<br/>
+ * Como heurística se usa la suma, para cada caja, del mínimo número de empujes que la separan de
+ * alguna meta sin tener en cuenta el resto de cajas. Los empujes que provocan un bloqueo (ver
+ * Board.isDeadlocked()) se descartan directamente.
+ *
+ * <h3>Límites</h3>
+ * Los estados ya vistos se guardan en una tabla de transposición limitada al número máximo de nodos,
+ * y la búsqueda se detiene si se alcanza ese número o el tiempo máximo configurado, de modo que puede
+ * ejecutarse desatendida sobre packs completos.<br/>
+ * La solución encontrada no es necesariamente la óptima.
+ *
+ * <h3>Uso desde la línea de comandos</h3>
+ * <code>java sokoapplet.Solver [-nodes N] [-time segundos] levels.txt ...</code>
+ *
+ * @author Fernando Carmona Varo
+ */
+public class Solver {
+
+    /**
+     * Resultado de una búsqueda
+     */
+    public enum Status {
+        /** Se ha encontrado una solución */
+        SOLVED,
+        /** Se han explorado todos los estados alcanzables sin encontrar solución */
+        UNSOLVABLE,
+        /** Se ha alcanzado el número máximo de nodos */
+        NODE_LIMIT,
+        /** Se ha alcanzado el tiempo máximo */
+        TIME_LIMIT
+    }
+
+    /**
+     * Resultado y estadísticas de una búsqueda
+     */
+    public static class Result {
+        /** Resultado de la búsqueda */
+        public Status status;
+        /** Solución en formato LURD, o null si no se ha encontrado */
+        public String solution;
+        /** Número de movimientos y empujes de la solución */
+        public int moves, pushes;
+        /** Nodos expandidos y nodos generados */
+        public long expanded, generated;
+        /** Tiempo empleado en milisegundos */
+        public long millis;
+        /** Máximo de memoria en uso observado durante la búsqueda, en bytes */
+        public long peakMemory;
+
+        /**
+         * @return true si se ha encontrado solución
+         */
+        public boolean isSolved() {
+            return status == Status.SOLVED;
+        }
+
+        /**
+         * @return Nodos expandidos por segundo
+         */
+        public long nodesPerSecond() {
+            return millis == 0 ? expanded * 1000 : expanded * 1000 / millis;
+        }
+
+        @Override
+        public String toString() {
+            return status + " moves=" + moves + " pushes=" + pushes + " expanded=" + expanded
+                    + " generated=" + generated + " time=" + millis + "ms nodes/s=" + nodesPerSecond()
+                    + " peakMem=" + (peakMemory >> 20) + "MB";
+        }
+    }
+
+    /**  Distancia de las casillas desde las que no se puede llegar a ninguna meta */
+    static final int INF = Integer.MAX_VALUE;
+
+    /**  Tablero de trabajo, copia del recibido */
+    private final Board board;
+    /**  Número de cajas del tablero */
+    private final int nBoxes;
+    /**  Mínimo número de empujes desde cada casilla hasta alguna meta */
+    private final int minDist[];
+    /**  Estado inicial: cajas y posición del jugador */
+    private final int rootBoxes[];
+    private final int rootPlayer;
+
+    /**  Máximo de nodos a guardar */
+    private int maxNodes = 1000000;
+    /**  Tiempo máximo en milisegundos, 0 para no limitarlo */
+    private long timeLimit;
+
+    /* Nodos generados: nodo padre, empuje que lo genera (casilla*4 + dirección), empujes desde
+       el inicio, y estado (cajas y zona del jugador) */
+    private int nodeCount;
+    private int parent[], move[], cost[];
+    private int states[];
+    /**  Cola de nodos abiertos */
+    private final LongHeap open = new LongHeap();
+    /**  Tabla de transposición con los estados ya generados */
+    private StateMap table;
+
+    /* Arrays auxiliares de las búsquedas en anchura sobre el tablero */
+    private final int stamp[], childStamp[], queue[], prevDir[];
+    private int mark, childMark;
+
+    /**
+     * Prepara la resolución del tablero dado a partir de su estado actual.
+     * El tablero no se modifica.
+     *
+     * @param board Tablero a resolver
+     */
+    public Solver(Board board) {
+        this.board = board.fork();
+        int size = board.XLim * board.YLim;
+        nBoxes = board.boxes.length;
+        rootBoxes = board.boxes.clone();
+        rootPlayer = board.player;
+        stamp = new int[size];
+        childStamp = new int[size];
+        queue = new int[size];
+        prevDir = new int[size];
+        minDist = pushDistances(this.board);
+    }
+
+    /**
+     * @param maxNodes Número máximo de nodos que se guardan durante la búsqueda
+     */
+    public void setMaxNodes(int maxNodes) {
+        this.maxNodes = maxNodes;
+    }
+
+    /**
+     * @param millis Tiempo máximo de búsqueda en milisegundos, 0 para no limitarlo
+     */
+    public void setTimeLimit(long millis) {
+        this.timeLimit = millis;
+    }
+
+    /**
+     * Calcula el mínimo número de empujes necesarios para llevar una caja desde cada casilla
+     * hasta alguna meta, sin tener en cuenta el resto de cajas. Para ello se "tira" de las cajas
+     * hacia atrás desde todas las metas a la vez.
+     *
+     * @param board Tablero del nivel
+     * @return Distancia de cada casilla, INF si desde ella no se puede llegar a ninguna meta
+     */
+    static int[] pushDistances(Board board) {
+        int size = board.XLim * board.YLim, goals = 0;
+        int targets[] = new int[size];
+        for (int i = 0; i < size; i++) {
+            if (board.isGoal(i)) {
+                targets[goals++] = i;
+            }
+        }
+        int dist[] = new int[size];
+        LowerBound.pull(board, java.util.Arrays.copyOf(targets, goals), dist, new int[size]);
+        return dist;
+    }
+
+    /**
+     * Busca una solución para el tablero.
+     *
+     * @return Resultado de la búsqueda, con la solución si se ha encontrado
+     */
+    public Result solve() {
+        Result res = new Result();
+        long start = System.currentTimeMillis();
+        Runtime rt = Runtime.getRuntime();
+        nodeCount = 0;
+        parent = new int[1024];
+        move = new int[1024];
+        cost = new int[1024];
+        states = new int[1024 * (nBoxes + 1)];
+        open.clear();
+        table = new StateMap(Math.min(maxNodes, 1 << 16));
+
+        board.setState(rootBoxes, rootPlayer);
+        int root = board.reachable(childStamp, ++childMark, queue);
+        table.add(board.boxHash ^ Board.playerKey(root));
+        int goal = -1;
+        if (board.hasWon()) {
+            goal = addNode(-1, 0, 0, board.boxes, root);
+        } else {
+            open.add(key(heuristic(board.boxes), 0, addNode(-1, 0, 0, board.boxes, root)));
+        }
+        res.status = Status.UNSOLVABLE;
+        int cur[] = new int[nBoxes];
+
+        search:
+        while (goal < 0 && !open.isEmpty()) {
+            int n = (int) open.poll();
+            res.expanded++;
+            if ((res.expanded & 1023) == 0) {
+                res.peakMemory = Math.max(res.peakMemory, rt.totalMemory() - rt.freeMemory());
+                if (timeLimit > 0 && System.currentTimeMillis() - start > timeLimit) {
+                    res.status = Status.TIME_LIMIT;
+                    break;
+                }
+            }
+            System.arraycopy(states, n * (nBoxes + 1), cur, 0, nBoxes);
+            board.setState(cur, states[n * (nBoxes + 1) + nBoxes]);
+            board.reachable(stamp, ++mark, queue);
+            int g = cost[n] + 1;
+            for (int i = 0; i < nBoxes; i++) {
+                int box = cur[i];
+                for (int dir = 0; dir < 4; dir++) {
+                    int from = board.neighbour(box, dir ^ 2);
+                    int to = board.neighbour(box, dir);
+                    if (from < 0 || to < 0 || stamp[from] != mark || !board.isEmpty(to) || minDist[to] == INF) {
+                        continue;
+                    }
+                    board.push(box, dir);
+                    if (board.isDeadlock(to)) {
+                        board.push(to, dir ^ 2);
+                        continue;
+                    }
+                    int pl = board.reachable(childStamp, ++childMark, queue);
+                    if (table.add(board.boxHash ^ Board.playerKey(pl))) {
+                        if (nodeCount == maxNodes) {
+                            res.status = Status.NODE_LIMIT;
+                            break search;
+                        }
+                        res.generated++;
+                        int child = addNode(n, box << 2 | dir, g, board.boxes, pl);
+                        if (board.hasWon()) {
+                            goal = child;
+                            break search;
+                        }
+                        int h = heuristic(board.boxes);
+                        open.add(key(g + h, h, child));
+                    }
+                    board.push(to, dir ^ 2);
+                }
+            }
+        }
+        if (goal >= 0) {
+            res.status = Status.SOLVED;
+            res.solution = solution(goal);
+            res.moves = res.solution.length();
+            res.pushes = cost[goal];
+        }
+        res.millis = System.currentTimeMillis() - start;
+        res.peakMemory = Math.max(res.peakMemory, rt.totalMemory() - rt.freeMemory());
+        // libera la memoria de la búsqueda
+        parent = move = cost = states = null;
+        table = null;
+        open.clear();
+        return res;
+    }
+
+    /**
+     * Calcula la heurística de un estado: suma de los empujes mínimos de cada caja hasta una meta
+     */
+    private int heuristic(int boxes[]) {
+        int h = 0;
+        for (int i = 0; i < boxes.length; i++) {
+            h += minDist[boxes[i]];
+        }
+        return h;
+    }
+
+    /**
+     * Clave de la cola de abiertos: ordena por f = g + h, luego por h, y guarda el número de nodo
+     */
+    private static long key(int f, int h, int node) {
+        return ((long) f << 48) | ((long) Math.min(h, 0xffff) << 32) | node;
+    }
+
+    /**
+     * Guarda un nodo nuevo
+     *
+     * @return Número del nodo
+     */
+    private int addNode(int from, int push, int g, int boxes[], int pl) {
+        if (nodeCount == parent.length) {
+            int n = parent.length * 2;
+            parent = grow(parent, n);
+            move = grow(move, n);
+            cost = grow(cost, n);
+            states = grow(states, n * (nBoxes + 1));
+        }
+        parent[nodeCount] = from;
+        move[nodeCount] = push;
+        cost[nodeCount] = g;
+        System.arraycopy(boxes, 0, states, nodeCount * (nBoxes + 1), nBoxes);
+        states[nodeCount * (nBoxes + 1) + nBoxes] = pl;
+        return nodeCount++;
+    }
+
+    private static int[] grow(int a[], int n) {
+        int aux[] = new int[n];
+        System.arraycopy(a, 0, aux, 0, a.length);
+        return aux;
+    }
+
+    /**
+     * Reconstruye la solución completa (movimientos y empujes) hasta el nodo dado
+     *
+     * @param goal Nodo final
+     * @return Solución en formato LURD
+     */
+    private String solution(int goal) {
+        int pushes[] = new int[cost[goal]];
+        for (int n = goal, i = pushes.length - 1; parent[n] >= 0; n = parent[n], i--) {
+            pushes[i] = move[n];
+        }
+        StringBuilder sb = new StringBuilder();
+        board.setState(rootBoxes, rootPlayer);
+        for (int i = 0; i < pushes.length; i++) {
+            int box = pushes[i] >> 2, dir = pushes[i] & 3;
+            walk(board.neighbour(box, dir ^ 2), sb);
+            sb.append(MoveHistory.toChar(dir | MoveHistory.PUSH));
+            board.push(box, dir);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Añade los movimientos del camino más corto del jugador hasta la casilla dada, y lo coloca en ella
+     *
+     * @param target Casilla de destino, alcanzable sin empujar cajas
+     * @param sb Donde se añaden los movimientos
+     */
+    private void walk(int target, StringBuilder sb) {
+        int head = 0, tail = 0;
+        mark++;
+        stamp[board.player] = mark;
+        queue[tail++] = board.player;
+        while (head < tail && stamp[target] != mark) {
+            int cell = queue[head++];
+            for (int dir = 0; dir < 4; dir++) {
+                int next = board.neighbour(cell, dir);
+                if (next >= 0 && stamp[next] != mark && board.isEmpty(next)) {
+                    stamp[next] = mark;
+                    prevDir[next] = dir;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        int len = sb.length();
+        for (int cell = target; cell != board.player; cell = board.neighbour(cell, prevDir[cell] ^ 2)) {
+            sb.insert(len, MoveHistory.toChar(prevDir[cell]));
+        }
+        board.setState(board.boxes, target);
+    }
+
+    /**
+     * Montículo de mínimos de valores long, para la cola de abiertos sin objetos intermedios
+     */
+    static class LongHeap {
+        private long heap[] = new long[1024];
+        private int size;
+
+        void add(long v) {
+            if (size == heap.length) {
+                long aux[] = new long[size * 2];
+                System.arraycopy(heap, 0, aux, 0, size);
+                heap = aux;
+            }
+            int i = size++;
+            while (i > 0 && heap[(i - 1) >> 1] > v) {
+                heap[i] = heap[(i - 1) >> 1];
+                i = (i - 1) >> 1;
+            }
+            heap[i] = v;
+        }
+
+        long poll() {
+            long top = heap[0];
+            long v = heap[--size];
+            int i = 0;
+            while (true) {
+                int c = 2 * i + 1;
+                if (c >= size) {
+                    break;
+                }
+                if (c + 1 < size && heap[c + 1] < heap[c]) {
+                    c++;
+                }
+                if (heap[c] >= v) {
+                    break;
+                }
+                heap[i] = heap[c];
+                i = c;
+            }
+            heap[i] = v;
+            return top;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+
+    /**
+     * Carga un pack de niveles en formato texto o binario según su extensión
+     *
+     * @param file Archivo del pack
+     * @return Niveles del pack
+     * @throws IOException si falla la lectura
+     */
+    static LevelSource openPack(File file) throws IOException {
+        if (file.getName().endsWith(".sokp")) {
+            return BinaryLevelPack.open(file);
+        }
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            return LevelPack.load(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Resuelve todos los niveles de los packs dados, mostrando el resultado de cada uno
+     *
+     * @param args [-nodes N] [-time segundos] pack...
+     */
+    public static void main(String[] args) throws IOException {
+        int maxNodes = 1000000;
+        long time = 60000;
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("-"); i += 2) {
+            if (args[i].equals("-nodes")) {
+                maxNodes = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("-time")) {
+                time = Long.parseLong(args[i + 1]) * 1000;
+            } else {
+                i = args.length;
+            }
+        }
+        if (i >= args.length) {
+            System.err.println("Uso: java sokoapplet.Solver [-nodes N] [-time segundos] pack...");
+            System.exit(1);
+        }
+        for (; i < args.length; i++) {
+            LevelSource levels = openPack(new File(args[i]));
+            int solved = 0;
+            for (int l = 0; l < levels.size(); l++) {
+                Solver solver = new Solver(levels.getBoard(l));
+                solver.setMaxNodes(maxNodes);
+                solver.setTimeLimit(time);
+                Result res = solver.solve();
+                if (res.isSolved()) {
+                    solved++;
+                }
+                System.out.println(args[i] + "\t" + (l + 1) + "\t" + levels.getTitle(l) + "\t" + res
+                        + (res.isSolved() ? "\t" + res.solution : ""));
+            }
+            System.out.println(args[i] + ": " + solved + "/" + levels.size() + " resueltos");
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package sokoapplet;
+
+import java.util.Arrays;
+
+/**
+ * Tabla hash de estados del tablero, que asocia a cada hash de 64 bits (ver Board.stateHash()) un entero.
+ * <br/>
+ * <a href="../../src/sokoapplet/StateMap.java">[Pulse aquí para ver el código fuente]</a>
+ * <hr/>
+ * Usa direccionamiento abierto con sondeo lineal sobre arrays de tipos primitivos, de forma que ni
+ * las claves ni los valores se guardan como objetos. Sirve como conjunto de estados ya visitados
+ * (add/contains) o como mapa de estado a valor (put/get), por ejemplo para guardar el número de nodo
+ * de una búsqueda o contar repeticiones de una posición.<br/>
+ * La clave 0 se usa internamente para marcar las posiciones libres, por lo que se guarda aparte.
+ *
+ * @author Fernando Carmona Varo
+ */
+public class StateMap {
+
+    /**  Valor devuelto por get() cuando la clave no está */
+    public static final int NONE = Integer.MIN_VALUE;
+
+    private long keys[];
+    private int values[];
+    /**  Número de claves guardadas (sin contar la clave 0) */
+    private int size;
+    /**  Si está la clave 0, y su valor */
+    private boolean hasZero;
+    private int zeroValue;
+    /**  Máscara de posiciones, capacidad - 1 */
+    private int mask;
+
+    /**
+     * Construye una tabla vacía
+     */
+    public StateMap() {
+        this(16);
+    }
+
+    /**
+     * Construye una tabla vacía con capacidad para el número de claves dado sin tener que crecer
+     *
+     * @param expected Número de claves previsto
+     */
+    public StateMap(int expected) {
+        int cap = 16;
+        while (cap < expected * 2) {
+            cap <<= 1;
+        }
+        keys = new long[cap];
+        values = new int[cap];
+        mask = cap - 1;
+    }
+
+    /**
+     * Posición inicial de una clave. Los hash de Board ya están bien distribuidos, pero se mezclan
+     * los bits altos por si la clave viene de otra fuente.
+     */
+    private int slot(long key) {
+        return (int) (key ^ (key >>> 32) ^ (key >>> 17)) & mask;
+    }
+
+    /**
+     * Devuelve el valor asociado a una clave
+     *
+     * @param key Hash del estado
+     * @return Valor asociado, o NONE si la clave no está
+     */
+    public int get(long key) {
+        if (key == 0) {
+            return hasZero ? zeroValue : NONE;
+        }
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+            if (keys[i] == 0) {
+                return NONE;
+            }
+        }
+    }
+
+    /**
+     * @param key Hash del estado
+     * @return true si la clave está en la tabla
+     */
+    public boolean contains(long key) {
+        return get(key) != NONE;
+    }
+
+    /**
+     * Asocia un valor a una clave, sustituyendo el anterior si lo hubiese
+     *
+     * @param key Hash del estado
+     * @param value Valor a asociar (distinto de NONE)
+     * @return Valor anterior, o NONE si la clave no estaba
+     */
+    public int put(long key, int value) {
+        if (key == 0) {
+            int old = hasZero ? zeroValue : NONE;
+            hasZero = true;
+            zeroValue = value;
+            return old;
+        }
+        int i = slot(key);
+        for (; keys[i] != 0; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                int old = values[i];
+                values[i] = value;
+                return old;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size * 4 >= keys.length * 3) {
+            rehash(keys.length * 2);
+        }
+        return NONE;
+    }
+
+    /**
+     * Añade una clave a la tabla, usada como conjunto
+     *
+     * @param key Hash del estado
+     * @return true si la clave no estaba
+     */
+    public boolean add(long key) {
+        if (contains(key)) {
+            return false;
+        }
+        put(key, 0);
+        return true;
+    }
+
+    /**
+     * @return Número de claves guardadas
+     */
+    public int size() {
+        return size + (hasZero ? 1 : 0);
+    }
+
+    /**
+     * Vacía la tabla, manteniendo su capacidad
+     */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        size = 0;
+        hasZero = false;
+    }
+
+    private void rehash(int cap) {
+        long oldKeys[] = keys;
+        int oldValues[] = values;
+        keys = new long[cap];
+        values = new int[cap];
+        mask = cap - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            long key = oldKeys[j];
+            if (key != 0) {
+                int i = slot(key);
+                while (keys[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+                values[i] = oldValues[j];
+            }
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package sokoapplet;
+
+import java.applet.Applet;
+import java.applet.AudioClip;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Tema de gráficos y sonido del juego, cargado en segundo plano.
+ * <br/>
+ * <a href="../../src/sokoapplet/Theme.java">[Pulse aquí para ver el código fuente]</a>
+ * <hr/>
+ * Un tema es un directorio (URL) con las imágenes de cada objeto del tablero y los sonidos del juego.
+ * Todos los archivos se descargan y decodifican en paralelo en cuanto se pide el tema, y cuando han
+ * terminado todos las imágenes se escalan al tamaño de casilla y se copian en una única imagen (atlas)
+ * en el formato de la pantalla, de la que se dibuja cada casilla. Mientras tanto se puede consultar el
+ * progreso de la carga y recibir un aviso con cada archivo cargado.<br/>
+ * Los temas cargados se guardan en una caché, de forma que volver a pedir un tema ya cargado (por
+ * ejemplo al cambiar de tema durante la partida) es inmediato.
+ *
+ * @author Fernando Carmona Varo
+ */
+public class Theme {
+
+    /**  Objetos del tablero que tienen imagen, y el archivo de cada uno */
+    static final char TILE_CHARS[] = { Board.WALL, Board.PLAYER, Board.BOX, Board.GOAL_EMPTY,
+            Board.GOAL_PLAYER, Board.GOAL_BOX };
+    static final String TILE_FILES[] = { "wall.png", "player.png", "box.png", "goal_empty.png",
+            "goal_player.png", "goal_box.png" };
+    /**  Archivos de sonido */
+    static final String SOUND_FILES[] = { "completed.au", "pushed.au" };
+
+    /**  Temas ya pedidos, por URL y tamaño de casilla */
+    private static final Map<String, Theme> cache = new HashMap<String, Theme>();
+    /**  Hilos de carga, compartidos por todos los temas */
+    private static ExecutorService loader;
+
+    /**  Directorio del tema */
+    private final URL url;
+    /**  Tamaño en pixeles de las casillas */
+    private final int tSize;
+    /**  Imágenes decodificadas, hasta que se construye el atlas */
+    private final BufferedImage images[] = new BufferedImage[TILE_FILES.length];
+    /**  Imagen con todas las casillas, una tras otra, y posición de cada objeto en ella (-1 si no tiene) */
+    private volatile BufferedImage atlas;
+    private final int slot[] = new int[256];
+    /**  Sonidos del tema */
+    private volatile AudioClip completed, pushed;
+    /**  Archivos cargados */
+    private final AtomicInteger loaded = new AtomicInteger();
+    /**  Escuchadores del progreso de la carga */
+    private final List<Runnable> listeners = new ArrayList<Runnable>();
+
+    private Theme(URL url, int tSize) {
+        this.url = url;
+        this.tSize = tSize;
+        for (int i = 0; i < slot.length; i++) {
+            slot[i] = -1;
+        }
+    }
+
+    /**
+     * Devuelve el tema del directorio dado, empezando a cargarlo si no se había pedido antes
+     *
+     * @param url Directorio del tema
+     * @param tSize Tamaño en pixeles de las casillas
+     * @return El tema, que puede estar todavía cargándose
+     */
+    public static synchronized Theme get(URL url, int tSize) {
+        String key = url + "@" + tSize;
+        Theme theme = cache.get(key);
+        if (theme == null) {
+            theme = new Theme(url, tSize);
+            cache.put(key, theme);
+            theme.start();
+        }
+        return theme;
+    }
+
+    /**
+     * Lanza la carga en paralelo de todos los archivos del tema
+     */
+    private void start() {
+        if (loader == null) {
+            loader = Executors.newFixedThreadPool(4, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "theme-loader");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        for (int i = 0; i < TILE_FILES.length; i++) {
+            final int n = i;
+            loader.execute(new Runnable() {
+                public void run() {
+                    try {
+                        images[n] = ImageIO.read(new URL(url, TILE_FILES[n]));
+                    } catch (Exception ex) {
+                        Logger.getLogger(Theme.class.getName()).log(Level.WARNING, "No se puede cargar " + TILE_FILES[n], ex);
+                    }
+                    done();
+                }
+            });
+        }
+        for (int i = 0; i < SOUND_FILES.length; i++) {
+            final int n = i;
+            loader.execute(new Runnable() {
+                public void run() {
+                    try {
+                        AudioClip clip = Applet.newAudioClip(new URL(url, SOUND_FILES[n]));
+                        if (n == 0) {
+                            completed = clip;
+                        } else {
+                            pushed = clip;
+                        }
+                    } catch (Exception ex) {
+                        Logger.getLogger(Theme.class.getName()).log(Level.WARNING, "No se puede cargar " + SOUND_FILES[n], ex);
+                    }
+                    done();
+                }
+            });
+        }
+    }
+
+    /**
+     * Se llama al terminar de cargar cada archivo. El último construye el atlas.
+     */
+    private void done() {
+        if (loaded.incrementAndGet() == total()) {
+            buildAtlas();
+        }
+        Runnable aux[];
+        synchronized (listeners) {
+            aux = listeners.toArray(new Runnable[listeners.size()]);
+        }
+        for (int i = 0; i < aux.length; i++) {
+            aux[i].run();
+        }
+    }
+
+    /**
+     * Escala todas las imágenes al tamaño de casilla y las copia en el atlas
+     */
+    private void buildAtlas() {
+        BufferedImage img;
+        int w = tSize * TILE_FILES.length;
+        try {
+            img = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                    .getDefaultConfiguration().createCompatibleImage(w, tSize, Transparency.TRANSLUCENT);
+        } catch (Exception e) { // sin pantalla (headless)
+            img = new BufferedImage(w, tSize, BufferedImage.TYPE_INT_ARGB_PRE);
+        }
+        Graphics2D g = img.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        for (int i = 0; i < TILE_FILES.length; i++) {
+            if (images[i] != null) {
+                g.drawImage(images[i], i * tSize, 0, tSize, tSize, null);
+                slot[TILE_CHARS[i]] = i;
+                images[i] = null;
+            }
+        }
+        g.dispose();
+        atlas = img;
+    }
+
+    /**
+     * Añade un escuchador al que se avisa cada vez que se carga un archivo del tema (desde el
+     * hilo de carga). Si el tema ya está cargado no se le avisará.
+     *
+     * @param l Escuchador
+     */
+    public void addProgressListener(Runnable l) {
+        synchronized (listeners) {
+            listeners.add(l);
+        }
+    }
+
+    /**
+     * Elimina un escuchador del progreso de la carga
+     *
+     * @param l Escuchador
+     */
+    public void removeProgressListener(Runnable l) {
+        synchronized (listeners) {
+            listeners.remove(l);
+        }
+    }
+
+    /**
+     * @return Número total de archivos del tema
+     */
+    public int total() {
+        return TILE_FILES.length + SOUND_FILES.length;
+    }
+
+    /**
+     * @return Porcentaje de archivos del tema ya cargados
+     */
+    public int getProgress() {
+        return loaded.get() * 100 / total();
+    }
+
+    /**
+     * @return true si el tema ha terminado de cargarse
+     */
+    public boolean isLoaded() {
+        return atlas != null;
+    }
+
+    /**
+     * Espera a que termine la carga del tema
+     *
+     * @param millis Tiempo máximo de espera
+     * @return true si el tema está cargado
+     */
+    public boolean waitLoaded(long millis) throws InterruptedException {
+        long end = System.currentTimeMillis() + millis;
+        while (!isLoaded() && System.currentTimeMillis() < end) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        return isLoaded();
+    }
+
+    /**
+     * @return URL del directorio del tema
+     */
+    public URL getUrl() {
+        return url;
+    }
+
+    /**
+     * @return Tamaño en pixeles de las casillas
+     */
+    public int getTileSize() {
+        return tSize;
+    }
+
+    /**
+     * @return Sonido de nivel completado, o null si no se ha podido cargar
+     */
+    public AudioClip getCompletedClip() {
+        return completed;
+    }
+
+    /**
+     * @return Sonido de caja empujada, o null si no se ha podido cargar
+     */
+    public AudioClip getPushedClip() {
+        return pushed;
+    }
+
+    /**
+     * Dibuja la imagen de un objeto del tablero copiándola del atlas. Si el tema no está cargado
+     * o el objeto no tiene imagen no se dibuja nada.
+     *
+     * @param g Graphics en el que dibujar
+     * @param obj Caracter del objeto (ver Board)
+     * @param x Posición X
+     * @param y Posición Y
+     */
+    public void drawTile(Graphics g, char obj, int x, int y) {
+        BufferedImage img = atlas;
+        int n = obj < slot.length ? slot[obj] : -1;
+        if (img != null && n >= 0) {
+            g.drawImage(img, x, y, x + tSize, y + tSize, n * tSize, 0, (n + 1) * tSize, tSize, null);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package sokoapplet;
+
+import java.util.ArrayList;
+
+/**
+ * Línea temporal de una partida, para saltar a cualquier movimiento del historial sin deshacerlos uno a uno.
+ * <br/>
+ * <a href="../../src/sokoapplet/Timeline.java">[Pulse aquí para ver el código fuente]</a>
+ * <hr/>
+ * Escucha los movimientos del tablero y cada vez que el jugador llega a un movimiento múltiplo del
+ * intervalo guarda un punto de control con Board.snapshot(), que sólo ocupa las cajas y el jugador.
+ * Para ir a un movimiento se restaura el punto de control anterior más cercano y se rehacen los que
+ * faltan (menos que el intervalo), o se deshacen o rehacen movimientos desde la posición actual si
+ * está más cerca. El salto puede ir hacia atrás o hacia delante, dentro de los movimientos que se
+ * pueden rehacer (por ejemplo los de una solución cargada con MoveHistory.loadLurd()).<br/>
+ * Los puntos de control cuyo historial se ha sobreescrito dejan de usarse (ver Board.inHistory()), y
+ * los movimientos que aún no se han recorrido no tienen punto de control hasta la primera vez que se pasa
+ * por ellos.
+ *
+ * @author Fernando Carmona Varo
+ */
+public class Timeline extends BoardAdapter {
+
+    /**  Intervalo por defecto entre puntos de control, en movimientos */
+    public static final int INTERVAL = 64;
+
+    /**  Tablero de la partida */
+    private final Board board;
+    /**  Movimientos entre puntos de control */
+    private final int interval;
+    /**  Punto de control de cada múltiplo del intervalo, o null si no se ha pasado por él */
+    private final ArrayList<Board.Snapshot> checkpoints = new ArrayList<Board.Snapshot>();
+
+    /**
+     * Crea la línea temporal de un tablero, registrándose como escuchador suyo
+     *
+     * @param board Tablero
+     * @param interval Movimientos entre puntos de control
+     */
+    public Timeline(Board board, int interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Intervalo no válido: " + interval);
+        }
+        this.board = board;
+        this.interval = interval;
+        record();
+        board.addBoardListener(this);
+    }
+
+    /**
+     * Guarda el punto de control de la posición actual, si es múltiplo del intervalo
+     */
+    private void record() {
+        int moves = board.moveNumber();
+        if (moves % interval != 0) {
+            return;
+        }
+        int k = moves / interval;
+        while (checkpoints.size() <= k) {
+            checkpoints.add(null);
+        }
+        Board.Snapshot s = checkpoints.get(k);
+        if (s == null || !board.inHistory(s)) {
+            checkpoints.set(k, board.snapshot());
+        }
+    }
+
+    @Override
+    public void playerMoved(Board b, int x, int y, int code) {
+        record();
+    }
+
+    /**
+     * @return Número de movimientos a los que se puede saltar: los realizados más los que se pueden rehacer
+     */
+    public int length() {
+        MoveHistory h = board.getHistory();
+        return h.size() + h.redoSize();
+    }
+
+    /**
+     * Lleva el tablero a un movimiento del historial.<br/>
+     * Si se restaura un punto de control el tablero cambia sin notificarlo a los escuchadores (ver
+     * Board.restore()), salvo los movimientos rehechos después, por lo que quien dibuje el tablero debe
+     * redibujarlo por completo.
+     *
+     * @param target Número de movimientos realizados tras el salto, se ajusta a los límites del historial
+     * @return true si se ha restaurado un punto de control
+     */
+    public boolean jump(int target) {
+        int current = board.moveNumber();
+        target = Math.max(0, Math.min(target, length()));
+        record();
+        boolean restored = false;
+        for (int k = Math.min(target / interval, checkpoints.size() - 1); k >= 0; k--) {
+            Board.Snapshot s = checkpoints.get(k);
+            if (s == null) {
+                continue;
+            }
+            if (!board.inHistory(s)) {
+                checkpoints.set(k, null);
+                continue;
+            }
+            if (target - s.moveNumber() < Math.abs(target - current)) {
+                board.restore(s);
+                current = s.moveNumber();
+                restored = true;
+            }
+            break;
+        }
+        while (current > target) {
+            board.undoMove();
+            current--;
+        }
+        while (current < target && board.redoMove()) {
+            current++;
+        }
+        return restored;
+    }
+
+    /**
+     * @return Número de puntos de control guardados
+     */
+    public int checkpoints() {
+        int n = 0;
+        for (Board.Snapshot s : checkpoints) {
+            if (s != null) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public String toString() {
+        return "timeline: move=" + board.moveNumber() + "/" + length() + " interval=" + interval
+                + " checkpoints=" + checkpoints();
+    }
+}